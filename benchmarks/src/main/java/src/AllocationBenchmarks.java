@@ -0,0 +1,80 @@
+package src;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The AllocationBenchmarks class measures training steps (Trainer.step) in each of the trainer's ways of stepping, to be run
+ * with "-prof gc", whose gc.alloc.rate.norm should be 0 bytes per step for every mode once warmed up:
+ *
+ *    java -jar benchmarks/target/benchmarks.jar AllocationBenchmarks -prof gc
+ *
+ * The modes are those of AllocationCheck, which fails the build when a step allocates; this class only measures the rate, for
+ * larger networks than the check's. The forward passes are measured by PerceptronBenchmarks. Checkpoints are not taken, since
+ * writing one is I/O that copies the weights on purpose.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class AllocationBenchmarks
+{
+   @Param({"2-4-3", "625-125-25-1"})
+   public String configuration;
+
+   @Param({"online", "miniBatch", "fullBatch", "threads", "float"})
+   public String mode;
+
+   Trainer trainer;
+   File directory;
+
+   /**
+    * Writes the files of the configuration and makes a trainer with the mode's settings.
+    *
+    * @throws IOException If the temporary files cannot be written.
+    */
+   @Setup(Level.Trial)
+   public void setUp() throws IOException
+   {
+      directory = PerceptronBenchmarks.writeFiles(PerceptronBenchmarks.parseConfiguration(configuration),
+            new Random(PerceptronBenchmarks.SEED));
+      trainer = new Trainer(new File(directory, "inputsFile.txt").getPath(), new File(directory, "trialCases.txt").getPath(),
+            new File(directory, "truths.txt").getPath(), new File(directory, "finalOuts.txt").getPath(),
+            AllocationCheck.settings(mode));
+   }
+
+   /**
+    * Closes the trainer, which stops its worker threads, and removes the temporary files.
+    */
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      trainer.close();
+      PerceptronBenchmarks.deleteFiles(directory);
+   }
+
+   @Benchmark
+   public double step()
+   {
+      trainer.step();
+      return trainer.currError;
+   }
+}
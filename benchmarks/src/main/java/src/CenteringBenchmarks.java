@@ -0,0 +1,70 @@
+package src;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The CenteringBenchmarks class measures DibDump.centeredGrayscale, which converts an image to grayscale, finds its center of
+ * mass and shifts it there, on square images from 25 to 4096 pels a side. The images are mostly white, as drawn ones are. It
+ * is measured both allocating a new image every time and reusing one image and one grayscale buffer, as BitmapPipeline does.
+ * The time per image divided by its pels stays level as the images grow when the centering scales linearly, and "-prof gc"
+ * shows that the reusing form allocates nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CenteringBenchmarks
+{
+   static final long SEED = 42L;
+
+   @Param({"25", "64", "256", "1024", "2048", "4096"})
+   public int size;
+
+   Bitmap bitmap;
+   Bitmap centered;
+   int[] gray;
+
+   /**
+    * Makes the image and the buffers that the reusing form centers into.
+    */
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      Random random = new Random(SEED);
+      bitmap = new Bitmap(size, size);
+      for (int i = 0; i < bitmap.pels.length; i++)
+      {
+         bitmap.pels[i] = random.nextInt(4) == 0 ? random.nextInt(0x01000000) : 0x00FFFFFF;
+      }
+      centered = new Bitmap(size, size);
+      gray = new int[bitmap.pels.length];
+   }
+
+   @Benchmark
+   public Bitmap centerNew()
+   {
+      return DibDump.centeredGrayscale(bitmap);
+   }
+
+   @Benchmark
+   public Bitmap centerReused()
+   {
+      return DibDump.centeredGrayscale(bitmap, centered, gray);
+   }
+}
@@ -0,0 +1,95 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The DibDumpBenchmarks class measures DibDump.convert, which centers an image, converts it to grayscale, streams its
+ * activations to a new activations file and writes the grayscale bitmap, as DibDump.main does for one image. The images are
+ * square and of random colors, from 25 to 1024 pels a side, and the activations are written in the text and the binary form
+ * (see ActivationWriter). The time per image divided by its pels stays level as the images grow when the conversion scales
+ * linearly. "-p format=binary" limits the run to one form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DibDumpBenchmarks
+{
+   static final long SEED = 42L;
+
+   @Param({"25", "64", "128", "256", "512", "1024"})
+   public int size;
+
+   @Param({"text", "binary"})
+   public String format;
+
+   Bitmap bitmap;
+   Path activations;
+   Path outBitmap;
+
+   /**
+    * Makes the image and the temporary files it is converted into.
+    *
+    * @throws IOException If the temporary files cannot be made.
+    */
+   @Setup(Level.Trial)
+   public void setUp() throws IOException
+   {
+      Random random = new Random(SEED);
+      bitmap = new Bitmap(size, size);
+      for (int i = 0; i < bitmap.pels.length; i++)
+      {
+         bitmap.pels[i] = random.nextInt(0x01000000);
+      }
+      activations = Files.createTempFile("activations", format.equals("binary") ? ActivationWriter.BINARY_EXTENSION : ".txt");
+      outBitmap = Files.createTempFile("out", ".bmp");
+   }
+
+   /**
+    * Removes the temporary files.
+    *
+    * @throws IOException If a file cannot be removed.
+    */
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException
+   {
+      Files.deleteIfExists(activations);
+      Files.deleteIfExists(outBitmap);
+   }
+
+   /**
+    * Converts the image into a new activations file.
+    *
+    * @return The activations file.
+    * @throws IOException If a file cannot be written.
+    */
+   @Benchmark
+   public Path convert() throws IOException
+   {
+      try (ActivationWriter writer = new ActivationWriter(activations))
+      {
+         DibDump.convert(bitmap, null, writer, outBitmap);
+      }
+      return activations;
+   }
+}
@@ -0,0 +1,250 @@
+package src;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The PerceptronBenchmarks class measures the throughput of the forward pass (Perceptron.runNetwork), the batched forward pass
+ * of BATCH cases, the backward pass (Perceptron.backProp) and a whole training step (Trainer.step) for several network
+ * configurations. Run the shaded jar with
+ * "-prof gc" to also report the allocation rate of each benchmark:
+ *
+ *    java -jar benchmarks/target/benchmarks.jar -prof gc
+ *
+ * The configurations are written the same way the Trainer prints them, inputs-hidden...-outputs. Each is run with the scalar
+ * and with the Vector API kernels (see Kernels); "-p kernels=scalar" limits the run to one of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PerceptronBenchmarks
+{
+   static final long SEED = 42L;
+   static final int CASES = 5;
+   static final int BATCH = 64;                   // Cases in each call of the batched forward pass.
+   static final double LAMBDA = 1E-6;             // Small enough that repeated back propagation does not run the weights away.
+
+   @Param({"2-4-3", "625-125-25-1", "4096-512-64-4"})
+   public String configuration;
+
+   @Param({"scalar", "vector"})
+   public String kernels;
+
+   Perceptron perceptron;
+   double[] inputs;
+   double[] truth;
+   double[][] batchInputs;
+   Workspace[] batchWorkspaces;
+
+   Trainer trainer;
+   File directory;
+
+   /**
+    * Builds the perceptron for the direct benchmarks, and writes the files that a Trainer needs for the step benchmark. The
+    * inputs file keeps the default settings, so the step benchmark trains the same way Trainer.main() would.
+    *
+    * @throws IOException If the temporary files cannot be written.
+    */
+   @Setup(Level.Trial)
+   public void setUp() throws IOException
+   {
+      int[] nodes = parseConfiguration(configuration);
+      int inputNodes = nodes[0];
+      int outputNodes = nodes[nodes.length - 1];
+      int[] hiddenLayerNodes = Arrays.copyOfRange(nodes, 1, nodes.length - 1);
+
+      Random random = new Random(SEED);
+      perceptron = new Perceptron(inputNodes, hiddenLayerNodes, outputNodes);
+      perceptron.randomizeWeights(-0.1, 0.1);
+      perceptron.kernels = Kernels.forName(kernels);
+      perceptron.lambda = LAMBDA;
+      inputs = randomRow(random, inputNodes);
+      truth = randomRow(random, outputNodes);
+      perceptron.runNetwork(inputs);
+      batchInputs = new double[BATCH][];
+      batchWorkspaces = new Workspace[BATCH];
+      for (int c = 0; c < BATCH; c++)
+      {
+         batchInputs[c] = randomRow(random, inputNodes);
+         batchWorkspaces[c] = new Workspace(perceptron, false);
+      }
+
+      directory = writeFiles(nodes, random);
+      trainer = new Trainer(new File(directory, "inputsFile.txt").getPath(), new File(directory, "trialCases.txt").getPath(),
+            new File(directory, "truths.txt").getPath(), new File(directory, "finalOuts.txt").getPath());
+      trainer.perceptron.kernels = perceptron.kernels;
+   }
+
+   /**
+    * Closes the trainer and removes the temporary files.
+    */
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      trainer.close();
+      deleteFiles(directory);
+   }
+
+   @Benchmark
+   public double[] runNetwork()
+   {
+      perceptron.runNetwork(inputs);
+      return perceptron.activations[perceptron.activations.length - 1];
+   }
+
+   /**
+    * Runs BATCH cases through the batched forward pass. Divide the throughput by BATCH to compare it with runNetwork.
+    */
+   @Benchmark
+   public double[] runNetworkBatch()
+   {
+      perceptron.runNetwork(batchInputs, 0, BATCH, batchWorkspaces);
+      return batchWorkspaces[BATCH - 1].outputs();
+   }
+
+   @Benchmark
+   public double[] backProp()
+   {
+      perceptron.backProp(truth);
+      return perceptron.weights;
+   }
+
+   @Benchmark
+   public double step()
+   {
+      trainer.step();
+      return trainer.currError;
+   }
+
+   /**
+    * Method parseConfiguration reads a configuration written as inputs-hidden...-outputs.
+    *
+    * @param configuration The configuration.
+    * @return The nodes in each activation layer, input layer first.
+    */
+   static int[] parseConfiguration(String configuration)
+   {
+      String[] split = configuration.split("-");
+      int[] nodes = new int[split.length];
+      for (int n = 0; n < nodes.length; n++)
+      {
+         nodes[n] = Integer.parseInt(split[n]);
+      }
+      return nodes;
+   }
+
+   /**
+    * Method writeFiles writes the inputs, trial cases and truths files of a network into a new temporary directory. The inputs
+    * file keeps the default settings, with an error of 0 and no limit on steps, so that a Trainer made from it never stops.
+    *
+    * @param nodes The nodes in each activation layer, input layer first.
+    * @param random The random number generator.
+    * @return The directory.
+    * @throws IOException If the files cannot be written.
+    */
+   static File writeFiles(int[] nodes, Random random) throws IOException
+   {
+      File directory = File.createTempFile("perceptron", "bench");
+      directory.delete();
+      directory.mkdir();
+      try (PrintWriter pw = new PrintWriter(new File(directory, "inputsFile.txt")))
+      {
+         pw.println(nodes[0]);
+         pw.print(nodes.length - 2);
+         for (int n = 1; n < nodes.length - 1; n++)
+         {
+            pw.print(" " + nodes[n]);
+         }
+         pw.println();
+         pw.println(nodes[nodes.length - 1]);
+         pw.println(CASES);
+         pw.println(LAMBDA);             // Lambda
+         pw.println(1.0E100);            // Lambda Cap
+         pw.println(1.0);                // Lambda Multiplier
+         pw.println(1.0);                // Lambda Divider
+         pw.println(0.0);                // Error
+         pw.println(Integer.MAX_VALUE);  // Steps
+         pw.println(-0.1);               // Low Value
+         pw.println(0.1);                // High Value
+      }
+      writeRows(new File(directory, "trialCases.txt"), random, nodes[0]);
+      writeRows(new File(directory, "truths.txt"), random, nodes[nodes.length - 1]);
+      return directory;
+   }
+
+   /**
+    * Method deleteFiles removes a temporary directory that writeFiles made, and everything in it.
+    *
+    * @param directory The directory.
+    */
+   static void deleteFiles(File directory)
+   {
+      for (File file : directory.listFiles())
+      {
+         file.delete();
+      }
+      directory.delete();
+   }
+
+   /**
+    * Method randomRow makes a row of random activations between 0 and 1.
+    *
+    * @param random The random number generator.
+    * @param length The number of activations.
+    * @return The row.
+    */
+   static double[] randomRow(Random random, int length)
+   {
+      double[] row = new double[length];
+      for (int i = 0; i < length; i++)
+      {
+         row[i] = random.nextDouble();
+      }
+      return row;
+   }
+
+   /**
+    * Method writeRows writes CASES rows of random activations in the format of the trial cases and truths files.
+    *
+    * @param file The file to write.
+    * @param random The random number generator.
+    * @param length The number of activations per row.
+    * @throws IOException If the file cannot be written.
+    */
+   static void writeRows(File file, Random random, int length) throws IOException
+   {
+      try (PrintWriter pw = new PrintWriter(file))
+      {
+         for (int tc = 0; tc < CASES; tc++)
+         {
+            double[] row = randomRow(random, length);
+            for (int i = 0; i < length; i++)
+            {
+               pw.print((i == 0 ? "" : " ") + row[i]);
+            }
+            pw.println();
+         }
+      }
+   }
+}
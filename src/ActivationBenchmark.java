@@ -0,0 +1,101 @@
+package src;
+
+import java.util.Random;
+
+/**
+ * The ActivationBenchmark class compares the exact sigmoid with the table-driven fast sigmoid. It reports:
+ * - the throughput of each function on random arguments,
+ * - the largest difference between the two functions over a fine sweep of arguments, and
+ * - the error reached by training the same network from the same starting weights with each function.
+ *
+ * Usage: java src.ActivationBenchmark inputsFile trialCasesFile truthsFile [steps]
+ * The training comparison takes the given number of steps (500 by default) regardless of the input file's end conditions.
+ */
+public class ActivationBenchmark
+{
+   static final int ARGUMENTS = 1 << 16;
+   static final int REPETITIONS = 500;
+   static final double ARGUMENT_RANGE = 20.0;
+   static final int DEFAULT_STEPS = 500;
+   static final long SEED = 42L;
+
+   /**
+    * Runs the three comparisons.
+    *
+    * @param args The input, trial cases and truths files used for the training comparison, then the optional number of steps.
+    */
+   public static void main(String[] args)
+   {
+      double[] arguments = new double[ARGUMENTS];
+      Random random = new Random(SEED);
+      for (int i = 0; i < arguments.length; i++)
+      {
+         arguments[i] = (random.nextDouble() * 2.0 - 1.0) * ARGUMENT_RANGE;
+      }
+
+      ActivationFunction[] functions = {ActivationFunction.SIGMOID, ActivationFunction.FAST_SIGMOID};
+      for (ActivationFunction function : functions)
+      {
+         evaluate(function, arguments);                                          // Warm up.
+         long startTime = System.nanoTime();
+         double checksum = evaluate(function, arguments);
+         double seconds = (System.nanoTime() - startTime) / 1E9;
+         System.out.printf("%-12s %8.1f million evaluations/sec (checksum %.3f)%n", function,
+               (double) ARGUMENTS * REPETITIONS / seconds / 1E6, checksum);
+      }
+
+      double maxError = 0.0;
+      for (double x = -ARGUMENT_RANGE; x <= ARGUMENT_RANGE; x += 1E-4)
+      {
+         maxError = Math.max(maxError, Math.abs(ActivationFunction.SIGMOID.f(x) - ActivationFunction.FAST_SIGMOID.f(x)));
+      }
+      System.out.printf("Largest difference on [-%.0f, %.0f]: %.3e (bound %.1e)%n", ARGUMENT_RANGE, ARGUMENT_RANGE, maxError,
+            ActivationFunction.FastSigmoid.MAX_ERROR);
+
+      if (args.length >= 3)
+      {
+         int steps = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_STEPS;
+         double[] startingWeights = null;
+         for (ActivationFunction function : functions)
+         {
+            Trainer trainer = new Trainer(args[0], args[1], args[2], null);
+            if (startingWeights == null)
+            {
+               startingWeights = trainer.perceptron.weights.clone();
+            }
+            System.arraycopy(startingWeights, 0, trainer.perceptron.weights, 0, startingWeights.length);
+            trainer.perceptron.activationFunction = function;
+
+            long startTime = System.nanoTime();
+            for (int step = 0; step < steps; step++)
+            {
+               trainer.step();
+            }
+            double seconds = (System.nanoTime() - startTime) / 1E9;
+            System.out.printf("%-12s error after %d steps: %.9f (%.1f steps/sec)%n", function, steps, trainer.currError,
+                  steps / seconds);
+            trainer.close();
+         }
+      }
+   }
+
+   /**
+    * Method evaluate applies the function to every argument REPETITIONS times.
+    *
+    * @param function The activation function.
+    * @param arguments The arguments.
+    * @return The sum of the results, so that the work cannot be optimized away.
+    */
+   static double evaluate(ActivationFunction function, double[] arguments)
+   {
+      double sum = 0.0;
+      for (int repetition = 0; repetition < REPETITIONS; repetition++)
+      {
+         for (int i = 0; i < arguments.length; i++)
+         {
+            sum += function.f(arguments[i]);
+         }
+      }
+      return sum;
+   }
+}
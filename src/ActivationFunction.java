@@ -0,0 +1,224 @@
+package src;
+
+/**
+ * The ActivationFunction interface is the threshold function f that the Perceptron applies to the dot product of every node.
+ * Back propagation also needs the derivative of f at each node, and every function here can find it from the node's activation,
+ * f(theta), which the Perceptron has already stored. This saves evaluating f a second time for the derivative.
+ *
+ * The functions available through forName are:
+ * - sigmoid, 1 / (1 + e^-x), the function used in the design documents.
+ * - fastSigmoid, the sigmoid read from a lookup table with linear interpolation, accurate to within FastSigmoid.MAX_ERROR.
+ * - tanh, the hyperbolic tangent.
+ * - relu, max(0, x).
+ * - leakyRelu, x for positive x and LeakyRelu.SLOPE * x otherwise.
+ * - linear, x itself.
+ */
+public interface ActivationFunction
+{
+   ActivationFunction SIGMOID = new Sigmoid();
+   ActivationFunction FAST_SIGMOID = new FastSigmoid();
+   ActivationFunction TANH = new Tanh();
+   ActivationFunction RELU = new Relu();
+   ActivationFunction LEAKY_RELU = new LeakyRelu();
+   ActivationFunction LINEAR = new Linear();
+
+   /**
+    * Method f applies the threshold function.
+    *
+    * @param x The dot product of a node's inputs and weights, theta.
+    * @return The node's activation.
+    */
+   double f(double x);
+
+   /**
+    * Method fPrime finds the derivative of the threshold function at a node, using the node's activation instead of theta.
+    *
+    * @param fx The node's activation, f(theta).
+    * @return The derivative f'(theta).
+    */
+   double fPrime(double fx);
+
+   /**
+    * Method forName finds the activation function with the given name, as used by the activation setting of the input file.
+    *
+    * @param name The name of the function.
+    * @return The matching activation function.
+    */
+   static ActivationFunction forName(String name)
+   {
+      switch (name)
+      {
+         case "sigmoid":
+            return SIGMOID;
+         case "fastSigmoid":
+            return FAST_SIGMOID;
+         case "tanh":
+            return TANH;
+         case "relu":
+            return RELU;
+         case "leakyRelu":
+            return LEAKY_RELU;
+         case "linear":
+            return LINEAR;
+         default:
+            throw new IllegalArgumentException("Activation function " + name + " not accepted, terminating.");
+      }
+   }
+
+   /**
+    * The sigmoid function, 1 / (1 + e^-x), whose derivative is f(x)(1 - f(x)).
+    */
+   final class Sigmoid implements ActivationFunction
+   {
+      public double f(double x)
+      {
+         return 1.0 / (1.0 + Math.exp(-x));
+      }
+
+      public double fPrime(double fx)
+      {
+         return fx * (1.0 - fx);
+      }
+
+      public String toString()
+      {
+         return "sigmoid";
+      }
+   }
+
+   /**
+    * The sigmoid function read from a table of exact values spaced 1 / STEPS_PER_UNIT apart on [-RANGE, RANGE], with linear
+    * interpolation in between. Outside of that range the sigmoid is within 1.2E-7 of 0 or 1, so the end values are returned.
+    * The error of linear interpolation is at most h^2 / 8 times the largest second derivative of the sigmoid (about 0.0962),
+    * where h is the spacing, which with 128 steps per unit is under 7.4E-7.
+    */
+   final class FastSigmoid implements ActivationFunction
+   {
+      static final double RANGE = 16.0;
+      static final int STEPS_PER_UNIT = 128;
+      static final double MAX_ERROR = 7.4E-7;
+
+      static final double[] TABLE = new double[(int) (2 * RANGE * STEPS_PER_UNIT) + 1];
+
+      static
+      {
+         for (int i = 0; i < TABLE.length; i++)
+         {
+            TABLE[i] = 1.0 / (1.0 + Math.exp(RANGE - (double) i / STEPS_PER_UNIT));
+         }
+      }
+
+      public double f(double x)
+      {
+         if (x <= -RANGE)
+         {
+            return TABLE[0];
+         }
+         if (x >= RANGE)
+         {
+            return TABLE[TABLE.length - 1];
+         }
+         double position = (x + RANGE) * STEPS_PER_UNIT;
+         int i = (int) position;
+         double fraction = position - i;
+         return TABLE[i] + fraction * (TABLE[i + 1] - TABLE[i]);
+      }
+
+      public double fPrime(double fx)
+      {
+         return fx * (1.0 - fx);
+      }
+
+      public String toString()
+      {
+         return "fastSigmoid";
+      }
+   }
+
+   /**
+    * The hyperbolic tangent, whose derivative is 1 - f(x)^2.
+    */
+   final class Tanh implements ActivationFunction
+   {
+      public double f(double x)
+      {
+         return Math.tanh(x);
+      }
+
+      public double fPrime(double fx)
+      {
+         return 1.0 - fx * fx;
+      }
+
+      public String toString()
+      {
+         return "tanh";
+      }
+   }
+
+   /**
+    * The rectified linear function, max(0, x). Its derivative is taken to be 0 at x = 0.
+    */
+   final class Relu implements ActivationFunction
+   {
+      public double f(double x)
+      {
+         return x > 0.0 ? x : 0.0;
+      }
+
+      public double fPrime(double fx)
+      {
+         return fx > 0.0 ? 1.0 : 0.0;
+      }
+
+      public String toString()
+      {
+         return "relu";
+      }
+   }
+
+   /**
+    * The leaky rectified linear function, which keeps a small slope for negative x so that those nodes can still learn.
+    * The activation has the same sign as x, so the derivative can still be found from the activation.
+    */
+   final class LeakyRelu implements ActivationFunction
+   {
+      static final double SLOPE = 0.01;
+
+      public double f(double x)
+      {
+         return x > 0.0 ? x : SLOPE * x;
+      }
+
+      public double fPrime(double fx)
+      {
+         return fx > 0.0 ? 1.0 : SLOPE;
+      }
+
+      public String toString()
+      {
+         return "leakyRelu";
+      }
+   }
+
+   /**
+    * The identity function, whose derivative is always 1.
+    */
+   final class Linear implements ActivationFunction
+   {
+      public double f(double x)
+      {
+         return x;
+      }
+
+      public double fPrime(double fx)
+      {
+         return 1.0;
+      }
+
+      public String toString()
+      {
+         return "linear";
+      }
+   }
+}
@@ -0,0 +1,212 @@
+package src;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * The ActivationWriter class streams activations to a file as they are made, so writing an image's activations takes time and
+ * memory in proportion to the number of pels instead of building the whole text first. There are two forms:
+ * - text, the form of the trial cases file: the activations of a case on one line, separated by single spaces, each written
+ *   as Double.toString writes it.
+ * - binary, chosen by the BINARY_EXTENSION file extension: a BinaryDataset of double values with the activations of each case
+ *   as its inputs and no outputs, which BinaryDataset.open and the trainer's activations file read. Every case must have as
+ *   many activations as the first. The header's counts are only known at the end, so close writes them last.
+ * Both go through a buffer of BUFFER_BYTES, so the file is written in large blocks.
+ */
+public class ActivationWriter implements Closeable
+{
+   static final String BINARY_EXTENSION = ".bin";
+   static final int BUFFER_BYTES = 1 << 16;
+   static final char SEPARATOR = ' ';
+
+   Writer text;                                  // The text form's writer, or null for the binary form.
+   FileOutputStream binary;                      // The binary form's file, or null for the text form.
+   ByteBuffer buffer;                            // Holds the binary form's values until it is full.
+   boolean caseStarted;                          // True once the current case has an activation, so the next needs a separator.
+   int caseValues;                               // The activations in the current case.
+   int rowValues;                                // The activations in every case of the binary form, or -1 before the first.
+   int numberCases;                              // The cases ended so far in the binary form.
+
+   /**
+    * Creates a writer, replacing the file if it exists. The file is binary if its name ends with BINARY_EXTENSION, and text
+    * otherwise.
+    *
+    * @param path The file to write.
+    * @throws IOException If the file cannot be created.
+    */
+   public ActivationWriter(Path path) throws IOException
+   {
+      this(path, path.getFileName().toString().endsWith(BINARY_EXTENSION));
+   }
+
+   /**
+    * Creates a writer of the given form, replacing the file if it exists.
+    *
+    * @param path The file to write.
+    * @param isBinary True for the binary form, false for text.
+    * @throws IOException If the file cannot be created.
+    */
+   public ActivationWriter(Path path, boolean isBinary) throws IOException
+   {
+      if (isBinary)
+      {
+         binary = new FileOutputStream(path.toFile());
+         buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         buffer.position(BinaryDataset.HEADER_BYTES);                     // Room for the header, which close fills in.
+         rowValues = -1;
+      }
+      else
+      {
+         text = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path.toFile()), StandardCharsets.UTF_8),
+               BUFFER_BYTES);
+      }
+   }
+
+   /**
+    * Method write adds one activation to the current case.
+    *
+    * @param activation The activation.
+    * @throws IOException If the file cannot be written.
+    */
+   public void write(double activation) throws IOException
+   {
+      if (text != null)
+      {
+         if (caseStarted)
+         {
+            text.write(SEPARATOR);
+         }
+         text.write(Double.toString(activation));
+      }
+      else
+      {
+         if (buffer.remaining() < Double.BYTES)
+         {
+            flushBuffer();
+         }
+         buffer.putDouble(activation);
+      }
+      caseStarted = true;
+      caseValues++;
+   }
+
+   /**
+    * Method write adds length activations to the current case, from activations[offset] on. The binary form puts as many as
+    * fit into the buffer at a time.
+    *
+    * @param activations The activations.
+    * @param offset The index of the first activation.
+    * @param length The number of activations.
+    * @throws IOException If the file cannot be written.
+    */
+   public void write(double[] activations, int offset, int length) throws IOException
+   {
+      if (text != null)
+      {
+         for (int i = 0; i < length; i++)
+         {
+            write(activations[offset + i]);
+         }
+         return;
+      }
+      int written = 0;
+      while (written < length)
+      {
+         if (buffer.remaining() < Double.BYTES)
+         {
+            flushBuffer();
+         }
+         int count = Math.min(length - written, buffer.remaining() / Double.BYTES);
+         int position = buffer.position();
+         for (int i = 0; i < count; i++)
+         {
+            buffer.putDouble(position + i * Double.BYTES, activations[offset + written + i]);
+         }
+         buffer.position(position + count * Double.BYTES);
+         written += count;
+      }
+      caseStarted |= length > 0;
+      caseValues += length;
+   }
+
+   /**
+    * Method endCase ends the current case, so the next activation starts a new one. In the text form this starts a new line,
+    * and in the binary form it checks that the case has as many activations as the first.
+    *
+    * @throws IOException If the file cannot be written.
+    */
+   public void endCase() throws IOException
+   {
+      if (text != null)
+      {
+         text.write('\n');
+      }
+      else
+      {
+         if (rowValues < 0)
+         {
+            rowValues = caseValues;
+         }
+         else if (caseValues != rowValues)
+         {
+            throw new IllegalArgumentException("Case of " + caseValues + " activations does not match the " + rowValues
+                  + " of the first case, terminating.");
+         }
+         numberCases++;
+      }
+      caseStarted = false;
+      caseValues = 0;
+   }
+
+   /**
+    * Method flushBuffer writes the binary form's buffered values to the file.
+    *
+    * @throws IOException If the file cannot be written.
+    */
+   void flushBuffer() throws IOException
+   {
+      binary.write(buffer.array(), 0, buffer.position());
+      buffer.clear();
+   }
+
+   /**
+    * Method close writes whatever is still buffered and closes the file. A case that was not ended is left without a line
+    * break in the text form, as the activations of a single image always have been, and is counted as a case in the binary
+    * form, whose header is written last.
+    *
+    * @throws IOException If the file cannot be written.
+    */
+   public void close() throws IOException
+   {
+      if (text != null)
+      {
+         text.close();
+         return;
+      }
+      try (FileOutputStream file = binary)
+      {
+         if (caseStarted)
+         {
+            endCase();
+         }
+         flushBuffer();
+         ByteBuffer header = ByteBuffer.allocate(BinaryDataset.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         header.putInt(BinaryDataset.MAGIC).putInt(BinaryDataset.VERSION).putInt(numberCases).putInt(Math.max(rowValues, 0))
+               .putInt(0).putInt(Double.BYTES).flip();
+         FileChannel channel = file.getChannel();
+         while (header.hasRemaining())
+         {
+            channel.write(header, header.position());
+         }
+      }
+   }
+}
@@ -0,0 +1,143 @@
+package src;
+
+/**
+ * The AllocationCheck class checks that the training and inference hot paths allocate nothing once they are warmed up. For
+ * each of the trainer's ways of stepping (see MODES and settings), it builds a Trainer from the given files with that mode's
+ * settings, takes warm-up steps, and then measures every step of a further run with an AllocationMeter, along with the
+ * single-case and batched forward passes of Perceptron.runNetwork over the trial cases. Checkpoints are not taken, since
+ * writing one is I/O that copies the weights on purpose.
+ *
+ * Usage: java src.AllocationCheck inputsFile trialCasesFile truthsFile [warmupSteps [measuredSteps]]
+ * Every path that allocated is printed with its byte count, and the program exits with status 1 if any did. The core module's
+ * build runs it on the xor sample in the test phase, so a step that allocates fails the build. With the vector kernels, the
+ * JVM must run with --add-modules jdk.incubator.vector and the warm-up must be long enough for the vectors to be compiled
+ * away.
+ */
+public class AllocationCheck
+{
+   static final int DEFAULT_WARMUP_STEPS = 20000;
+   static final int DEFAULT_MEASURED_STEPS = 200;
+   static final String[] MODES = {"online", "miniBatch", "fullBatch", "threads", "float"};
+
+   /**
+    * Runs the check in every mode.
+    *
+    * @param args The input, trial cases and truths files, then the optional numbers of warm-up and measured steps.
+    */
+   public static void main(String[] args)
+   {
+      int warmupSteps = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_WARMUP_STEPS;
+      int measuredSteps = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_MEASURED_STEPS;
+      boolean allocated = false;
+      for (String mode : MODES)
+      {
+         try (Trainer trainer = new Trainer(args[0], args[1], args[2], null, settings(mode)))
+         {
+            if (!trainer.allocationMeter.isSupported())
+            {
+               System.out.println("This JVM cannot count allocations, nothing was checked.");
+               return;
+            }
+            allocated |= check(trainer, mode, warmupSteps, measuredSteps);
+         }
+      }
+      if (allocated)
+      {
+         System.out.println("FAILED: a hot path allocated.");
+         System.exit(1);
+      }
+      System.out.println("PASSED: no hot path allocated.");
+   }
+
+   /**
+    * Method settings gives the settings that make a trainer step in a mode, each written as a line of the input file:
+    * - online, one update per case.
+    * - miniBatch, one update per two cases.
+    * - fullBatch, one update per step.
+    * - threads, one update per step, with the cases shared by two threads.
+    * - float, online updates in float precision.
+    *
+    * @param mode The mode.
+    * @return The settings.
+    */
+   public static String[] settings(String mode)
+   {
+      switch (mode)
+      {
+         case "online":
+            return new String[] {"batchSize 1"};
+         case "miniBatch":
+            return new String[] {"batchSize 2"};
+         case "fullBatch":
+            return new String[] {"batchSize " + Trainer.ALL_CASES};
+         case "threads":
+            return new String[] {"batchSize " + Trainer.ALL_CASES, "threads 2"};
+         case "float":
+            return new String[] {"precision float"};
+         default:
+            throw new IllegalArgumentException("Mode " + mode + " not accepted, terminating.");
+      }
+   }
+
+   /**
+    * Method check warms up a trainer, measures its steps and forward passes, and prints what they allocated.
+    *
+    * @param trainer The trainer.
+    * @param mode The name of its mode.
+    * @param warmupSteps The steps to take before measuring.
+    * @param measuredSteps The steps to measure.
+    * @return True if any of them allocated.
+    */
+   static boolean check(Trainer trainer, String mode, int warmupSteps, int measuredSteps)
+   {
+      AllocationMeter meter = trainer.allocationMeter;
+      for (int step = 0; step < warmupSteps; step++)
+      {
+         trainer.step();
+      }
+      long stepBytes = 0L;
+      int allocatingSteps = 0;
+      for (int step = 0; step < measuredSteps; step++)
+      {
+         trainer.measureStep();
+         stepBytes += trainer.stepAllocatedBytes;
+         if (trainer.stepAllocatedBytes > 0)
+         {
+            allocatingSteps++;
+         }
+      }
+
+      Perceptron perceptron = trainer.perceptron;
+      double[][] inputs = new double[Trainer.BLOCK_CASES][];
+      double[][] truths = new double[Trainer.BLOCK_CASES][];
+      long singleBytes = 0L;
+      long batchedBytes = 0L;
+      for (int pass = 0; pass < 2; pass++)                                 // The first pass warms up the inference paths.
+      {
+         singleBytes = 0L;
+         batchedBytes = 0L;
+         trainer.source.rewind(false);
+         int count;
+         while ((count = trainer.source.nextBlock(inputs, truths)) > 0)
+         {
+            long start = meter.allocatedBytes();
+            for (int i = 0; i < count; i++)
+            {
+               perceptron.runNetwork(inputs[i]);
+            }
+            singleBytes += meter.since(start);
+
+            start = meter.allocatedBytes();
+            perceptron.runNetwork(inputs, 0, count, trainer.blockWorkspaces);
+            batchedBytes += meter.since(start);
+         }
+      }
+
+      System.out.println(mode + " steps: " + stepBytes + " bytes allocated, by " + allocatingSteps + " of " + measuredSteps
+            + " steps after " + warmupSteps + " warm-up steps (batch size " + trainer.batchSize + ", threads " + trainer.threads
+            + ", precision " + (trainer.singlePrecision ? "float" : "double") + ", kernels " + trainer.kernels + ")");
+      System.out.println(mode + " single-case forward passes: " + singleBytes + " bytes allocated");
+      System.out.println(mode + " batched forward passes: " + batchedBytes + " bytes allocated");
+      return stepBytes > 0 || singleBytes > 0 || batchedBytes > 0;
+   }
+}
@@ -0,0 +1,58 @@
+package src;
+
+/**
+ * The ArrayCaseSource class hands out trial cases and truths that are already in memory. The blocks point straight at the
+ * arrays' rows, so nothing is copied.
+ */
+public class ArrayCaseSource implements CaseSource
+{
+   double[][] trialCases;
+   double[][] truths;
+   int next;                          // The index of the next case to hand out.
+
+   /**
+    * Creates a source for the given cases.
+    *
+    * @param trialCases The input activations, one row per case.
+    * @param truths The expected outputs, one row per case.
+    */
+   public ArrayCaseSource(double[][] trialCases, double[][] truths)
+   {
+      this.trialCases = trialCases;
+      this.truths = truths;
+   }
+
+   public int numberCases()
+   {
+      return trialCases.length;
+   }
+
+   /**
+    * Starts a new pass. The cases are always handed out in order.
+    *
+    * @param shuffled Ignored.
+    */
+   public void rewind(boolean shuffled)
+   {
+      next = 0;
+   }
+
+   public int nextBlock(double[][] inputs, double[][] truths)
+   {
+      int count = Math.min(inputs.length, trialCases.length - next);
+      for (int i = 0; i < count; i++)
+      {
+         inputs[i] = trialCases[next];
+         truths[i] = this.truths[next];
+         next++;
+      }
+      return count;
+   }
+
+   /**
+    * Holds nothing to release, since the arrays belong to the caller.
+    */
+   public void close()
+   {
+   }
+}
@@ -0,0 +1,126 @@
+package src;
+
+import java.util.Random;
+
+/**
+ * The Augmentation class holds the settings that make training cases vary from one step to the next, so that a small set of
+ * images is not simply memorized. Each case's input activations are taken as an image, imageWidth activations a row, and a
+ * variant of it is made by:
+ * - shift, which moves the image by up to shift pels in each direction.
+ * - flip, which mirrors the image left to right (HORIZONTAL), top to bottom (VERTICAL), or either at random (BOTH), each half
+ *   of the time.
+ * - scale, which enlarges or shrinks the image about its center by a factor of up to scale either way.
+ * - noise, which adds gaussian noise with a standard deviation of noise to every activation, kept between 0 and 1.
+ * Pels moved in from outside the image are 0, which is white. When a case has as many expected outputs as inputs, as when
+ * each image is its own truth, the truth is moved in the same way, without the noise. Any other truth is left as it is.
+ * Each setting is off unless it is given. The variants are made by AugmentingCaseSource, on a thread of its own.
+ */
+public class Augmentation
+{
+   static final String NONE = "none";
+   static final String HORIZONTAL = "horizontal";
+   static final String VERTICAL = "vertical";
+   static final String BOTH = "both";
+   static final int DEFAULT_BUFFER = 1024;
+
+   int shift;                                    // Largest shift in pels, 0 for no shifting.
+   String flip;                                  // NONE, HORIZONTAL, VERTICAL or BOTH.
+   double scale;                                 // Largest change of size as a fraction, 0 for no scaling.
+   double noise;                                 // Standard deviation of the noise, 0 for no noise.
+   int buffer;                                   // The number of variants that may be made ahead of the step using them.
+   int imageWidth;                               // Activations per row of the image, 0 for a square image.
+
+   int width;                                    // The image size, found by check.
+   int height;
+
+   /**
+    * Creates the augmentation settings with every variation off.
+    */
+   public Augmentation()
+   {
+      flip = NONE;
+      buffer = DEFAULT_BUFFER;
+   }
+
+   /**
+    * Method isOn tells whether any variation is set.
+    *
+    * @return True if cases are to be augmented.
+    */
+   boolean isOn()
+   {
+      return shift > 0 || !flip.equals(NONE) || scale > 0.0 || noise > 0.0;
+   }
+
+   /**
+    * Method check finds the size of the image from the number of input activations, which must fill whole rows, or make a
+    * square if no width is set.
+    *
+    * @param inputNodes The number of input activations.
+    */
+   void check(int inputNodes)
+   {
+      width = imageWidth > 0 ? imageWidth : (int) Math.round(Math.sqrt(inputNodes));
+      height = width > 0 ? inputNodes / width : 0;
+      if (width < 1 || width * height != inputNodes)
+      {
+         throw new IllegalArgumentException("Augmenting " + inputNodes + " input activations needs an image width, terminating.");
+      }
+   }
+
+   /**
+    * Method transform makes one variant of a case. Each pel of the variant is taken from the nearest pel of the case after
+    * undoing the scale, shift and flip picked for it, so every pel is written exactly once.
+    *
+    * @param random The random numbers of the thread making the variant.
+    * @param inputs The case's input activations.
+    * @param truth The case's expected outputs.
+    * @param variantInputs The array receiving the variant's input activations.
+    * @param variantTruth The array receiving the variant's expected outputs.
+    */
+   void transform(Random random, double[] inputs, double[] truth, double[] variantInputs, double[] variantTruth)
+   {
+      double factor = scale > 0.0 ? 1.0 + scale * (2.0 * random.nextDouble() - 1.0) : 1.0;
+      int rowShift = shift > 0 ? random.nextInt(2 * shift + 1) - shift : 0;
+      int columnShift = shift > 0 ? random.nextInt(2 * shift + 1) - shift : 0;
+      boolean mirrorColumns = (flip.equals(HORIZONTAL) || flip.equals(BOTH)) && random.nextBoolean();
+      boolean mirrorRows = (flip.equals(VERTICAL) || flip.equals(BOTH)) && random.nextBoolean();
+      boolean moveTruth = truth.length == inputs.length;
+
+      double centerRow = (height - 1) / 2.0;
+      double centerColumn = (width - 1) / 2.0;
+      int p = 0;
+      for (int r = 0; r < height; r++)
+      {
+         int fromRow = (int) Math.round((r - rowShift - centerRow) / factor + centerRow);
+         if (mirrorRows)
+         {
+            fromRow = height - 1 - fromRow;
+         }
+         for (int c = 0; c < width; c++)
+         {
+            int fromColumn = (int) Math.round((c - columnShift - centerColumn) / factor + centerColumn);
+            if (mirrorColumns)
+            {
+               fromColumn = width - 1 - fromColumn;
+            }
+            boolean inside = fromRow >= 0 && fromRow < height && fromColumn >= 0 && fromColumn < width;
+            double value = inside ? inputs[fromRow * width + fromColumn] : 0.0;
+            if (moveTruth)
+            {
+               variantTruth[p] = inside ? truth[fromRow * width + fromColumn] : 0.0;
+            }
+            if (noise > 0.0)
+            {
+               value = Math.min(1.0, Math.max(0.0, value + noise * random.nextGaussian()));
+            }
+            variantInputs[p] = value;
+            p++;
+         }
+      }
+      if (!moveTruth)
+      {
+         System.arraycopy(truth, 0, variantTruth, 0, truth.length);
+      }
+   }
+}
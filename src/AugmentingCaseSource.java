@@ -0,0 +1,232 @@
+package src;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The AugmentingCaseSource class hands out a new variant of the cases on every shuffled pass (see Augmentation). The variants
+ * are made ahead of time by a producer thread of its own, which reads the cases from a source only it uses and puts each
+ * variant in a ring of preallocated rows. Once the ring is full the producer waits for the step to give rows back, so it never
+ * gets more than the ring ahead, and a step only waits if it uses cases faster than the producer makes them. Nothing is
+ * written to disk and nothing is allocated per case.
+ *
+ * The ring is shared by exactly two threads, the producer and the trainer, through two counters: produced, the number of rows
+ * filled, and released, the number of rows the trainer is done with. Each counter is written by one thread only. A row handed
+ * out by nextBlock stays the trainer's until the next call to nextBlock or rewind, as CaseSource promises. A thread that has
+ * to wait parks, and the other wakes it once there is something to do, as in WorkerGroup.
+ *
+ * Unshuffled passes, which write the outputs, hand out the cases themselves, from a second source.
+ *
+ * The producer runs until close is called, which Trainer.close does.
+ */
+public class AugmentingCaseSource implements CaseSource
+{
+   CaseSource plain;                             // The cases as they are, for unshuffled passes.
+   CaseSource feed;                              // The cases the producer makes variants of.
+   Augmentation augmentation;
+   int numberCases;
+   int blockCases;                               // The largest block the feed is asked for.
+
+   double[][] ringInputs;                        // The variants, in rows reused around the ring.
+   double[][] ringTruths;
+   volatile long produced;                       // Rows filled by the producer, counting every time around the ring.
+   volatile long released;                       // Rows the trainer is done with.
+   long taken;                                   // Rows handed out to the trainer, which only the trainer uses.
+   int handed;                                   // Cases handed out in the current pass.
+   boolean augmenting;                           // True during a shuffled pass.
+   long waits;                                   // Times the trainer had to wait for a variant.
+
+   Thread producer;
+   volatile Thread consumer;                     // The trainer thread while it waits for a variant, or null.
+   volatile boolean producerWaiting;             // True while the producer waits for a row to be released.
+   volatile Throwable failure;                   // What stopped the producer, if anything did.
+   volatile boolean closed;                      // Set by close to stop the producer.
+
+   /**
+    * Creates an augmenting source. The producer starts with the first shuffled pass.
+    *
+    * @param plain The source of the cases for unshuffled passes.
+    * @param feed A second source of the same cases, used only by the producer.
+    * @param augmentation The variations to make.
+    * @param inputNodes The input activations per case.
+    * @param outputNodes The expected outputs per case.
+    * @param blockCases The largest number of cases that will be asked for in one block.
+    */
+   public AugmentingCaseSource(CaseSource plain, CaseSource feed, Augmentation augmentation, int inputNodes, int outputNodes,
+         int blockCases)
+   {
+      this.plain = plain;
+      this.feed = feed;
+      this.augmentation = augmentation;
+      numberCases = plain.numberCases();
+      this.blockCases = blockCases;
+      int rows = Math.max(augmentation.buffer, 2 * blockCases);                 // Room to work while the trainer holds a block.
+      ringInputs = new double[rows][inputNodes];
+      ringTruths = new double[rows][outputNodes];
+   }
+
+   public int numberCases()
+   {
+      return numberCases;
+   }
+
+   /**
+    * Starts a new pass. A shuffled pass hands out numberCases variants from the ring, and an unshuffled one the cases
+    * themselves, in order.
+    *
+    * @param shuffled True for variants, false for the cases themselves.
+    */
+   public void rewind(boolean shuffled)
+   {
+      release();
+      augmenting = shuffled;
+      handed = 0;
+      if (!augmenting)
+      {
+         plain.rewind(false);
+      }
+      else if (producer == null)
+      {
+         producer = new Thread(this::produce, "Augmentation producer");
+         producer.setDaemon(true);
+         producer.start();
+      }
+   }
+
+   public int nextBlock(double[][] inputs, double[][] truths)
+   {
+      if (!augmenting)
+      {
+         return plain.nextBlock(inputs, truths);
+      }
+      release();
+      int count = Math.min(inputs.length, numberCases - handed);
+      for (int i = 0; i < count; i++)
+      {
+         if (taken == produced)
+         {
+            awaitVariant();
+         }
+         int row = (int) (taken % ringInputs.length);
+         inputs[i] = ringInputs[row];
+         truths[i] = ringTruths[row];
+         taken++;
+      }
+      handed += count;
+      return count;
+   }
+
+   /**
+    * Method release gives the rows of the last block back to the producer.
+    */
+   void release()
+   {
+      if (released != taken)
+      {
+         released = taken;
+         if (producerWaiting)
+         {
+            LockSupport.unpark(producer);
+         }
+      }
+   }
+
+   /**
+    * Method close stops the producer and waits for it to end, so that neither the thread nor the ring it fills outlives the
+    * trainer, and then closes both sources of the cases. The source cannot hand out cases afterwards.
+    */
+   public void close()
+   {
+      closed = true;
+      if (producer != null)
+      {
+         LockSupport.unpark(producer);
+         try
+         {
+            producer.join();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+      }
+      feed.close();
+      plain.close();
+   }
+
+   /**
+    * Method awaitVariant parks the trainer until the producer has filled the next row, and passes on the producer's failure.
+    */
+   void awaitVariant()
+   {
+      waits++;
+      while (taken == produced)
+      {
+         if (failure != null)
+         {
+            throw new IllegalStateException("Augmentation failed, terminating.", failure);
+         }
+         consumer = Thread.currentThread();
+         if (taken == produced)                                                   // Checked again after announcing the wait.
+         {
+            LockSupport.park(this);
+         }
+         consumer = null;
+      }
+   }
+
+   /**
+    * Method produce is the producer's loop: make a variant of each case of the feed, pass after pass, waiting whenever the ring
+    * is full, until the source is closed.
+    */
+   void produce()
+   {
+      Random random = new Random();
+      double[][] blockInputs = new double[blockCases][];
+      double[][] blockTruths = new double[blockCases][];
+      try
+      {
+         while (!closed)
+         {
+            feed.rewind(true);
+            int count;
+            while ((count = feed.nextBlock(blockInputs, blockTruths)) > 0)
+            {
+               for (int i = 0; i < count; i++)
+               {
+                  while (produced - released == ringInputs.length && !closed)
+                  {
+                     producerWaiting = true;
+                     if (produced - released == ringInputs.length && !closed)      // Checked again after announcing the wait.
+                     {
+                        LockSupport.park(this);
+                     }
+                     producerWaiting = false;
+                  }
+                  if (closed)
+                  {
+                     return;
+                  }
+                  int row = (int) (produced % ringInputs.length);
+                  augmentation.transform(random, blockInputs[i], blockTruths[i], ringInputs[row], ringTruths[row]);
+                  produced++;                                                     // Only the producer writes produced.
+                  Thread waiting = consumer;
+                  if (waiting != null)
+                  {
+                     LockSupport.unpark(waiting);
+                  }
+               }
+            }
+         }
+      }
+      catch (Throwable e)
+      {
+         failure = e;
+         Thread waiting = consumer;
+         if (waiting != null)
+         {
+            LockSupport.unpark(waiting);
+         }
+      }
+   }
+}
@@ -0,0 +1,359 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The BinaryDataset class reads and writes trial cases and truths in a packed binary form that can be memory mapped, instead of
+ * the whitespace-separated text of the trial cases and truths files. A single dataset file holds both.
+ *
+ * All values are little endian. The file begins with a HEADER_BYTES byte header of six ints:
+ *    magic (MAGIC), version (VERSION), number of cases, input nodes, output nodes, bytes per value (4 for float, 8 for double)
+ * followed by one row per case, each row holding the case's input activations and then its expected outputs.
+ *
+ * Functions in this class include the following:
+ * - main, which converts a trial cases file and a truths file into a dataset file.
+ * - isDataset, which checks whether a file is a dataset file.
+ * - open, which memory maps a dataset file.
+ * - readHeader, which reads only the header, for sources that stream the cases instead (see StreamingCaseSource).
+ * - readCase, readInputs and readTruths, which copy the values out of the mapped file.
+ * - write, which writes a dataset file, and create, which maps a new one for writing case by case.
+ */
+public class BinaryDataset
+{
+   static final int MAGIC = 0x54414450;          // "PDAT" when read as little endian bytes.
+   static final int VERSION = 1;
+   static final int HEADER_BYTES = 24;
+
+   int numberCases;
+   int inputNodes;
+   int outputNodes;
+   int valueBytes;                               // Bytes per value, Float.BYTES or Double.BYTES.
+   int rowValues;                                // Values per case.
+   DoubleBuffer doubles;                         // The values after the header, when they are stored as doubles.
+   FloatBuffer floats;                           // The values after the header, when they are stored as floats.
+
+   /**
+    * Converts text trial cases and truths into a dataset file.
+    *
+    * @param args The trial cases file, the truths file, the dataset file to write, and optionally "float" to store the values in
+    *             single precision.
+    * @throws IOException If a file cannot be read or written.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      double[][] trialCases = readRows(args[0]);
+      double[][] truths = readRows(args[1]);
+      if (trialCases.length != truths.length)
+      {
+         throw new IllegalArgumentException("The trial cases and truths files have different numbers of lines, terminating.");
+      }
+      boolean singlePrecision = args.length > 3 && args[3].equals("float");
+      write(args[2], trialCases, truths, singlePrecision);
+      System.out.println("Wrote " + trialCases.length + " cases to " + args[2]);
+   }
+
+   /**
+    * Method isDataset checks whether a file starts with the dataset header.
+    *
+    * @param filename The name of the file.
+    * @return True if the file is a dataset file.
+    */
+   public static boolean isDataset(String filename)
+   {
+      try (RandomAccessFile file = new RandomAccessFile(filename, "r"))
+      {
+         return file.length() >= HEADER_BYTES && Integer.reverseBytes(file.readInt()) == MAGIC;
+      }
+      catch (IOException e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * Method open memory maps a dataset file and reads its header. The mapping stays valid after the file is closed.
+    *
+    * @param filename The name of the dataset file.
+    * @return The dataset.
+    * @throws IOException If the file cannot be mapped.
+    */
+   public static BinaryDataset open(String filename) throws IOException
+   {
+      BinaryDataset dataset;
+      try (RandomAccessFile file = new RandomAccessFile(filename, "r"); FileChannel channel = file.getChannel())
+      {
+         dataset = readHeader(channel, filename);
+         long valuesSize = dataset.valuesBytes();
+         if (HEADER_BYTES + valuesSize > Integer.MAX_VALUE)
+         {
+            throw new IOException(filename + " is too large to map at once, stream it instead");
+         }
+         MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, valuesSize);
+         mapped.order(ByteOrder.LITTLE_ENDIAN);
+         if (dataset.valueBytes == Double.BYTES)
+         {
+            dataset.doubles = mapped.asDoubleBuffer();
+         }
+         else
+         {
+            dataset.floats = mapped.asFloatBuffer();
+         }
+      }
+      return dataset;
+   }
+
+   /**
+    * Method readHeader reads and checks the header at the start of a dataset file, without reading any of the cases.
+    *
+    * @param channel The open dataset file.
+    * @param filename The name of the file, for error messages.
+    * @return A dataset holding only the header's values.
+    * @throws IOException If the header cannot be read or is not a valid dataset header.
+    */
+   static BinaryDataset readHeader(FileChannel channel, String filename) throws IOException
+   {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, header, 0);
+      if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+      {
+         throw new IOException(filename + " is not a version " + VERSION + " dataset file");
+      }
+
+      BinaryDataset dataset = new BinaryDataset();
+      dataset.numberCases = header.getInt(8);
+      dataset.inputNodes = header.getInt(12);
+      dataset.outputNodes = header.getInt(16);
+      dataset.valueBytes = header.getInt(20);
+      if (dataset.valueBytes != Float.BYTES && dataset.valueBytes != Double.BYTES)
+      {
+         throw new IOException(filename + " has " + dataset.valueBytes + " bytes per value");
+      }
+      dataset.rowValues = dataset.inputNodes + dataset.outputNodes;
+      if (HEADER_BYTES + dataset.valuesBytes() > channel.size())
+      {
+         throw new IOException(filename + " is shorter than its header says");
+      }
+      return dataset;
+   }
+
+   /**
+    * Method readFully fills the rest of a buffer from a channel, starting at the given position in the file. It stops early only
+    * at the end of the file, leaving the rest of the buffer unfilled.
+    *
+    * @param channel The channel to read from.
+    * @param buffer The buffer to fill.
+    * @param position The position in the file of the first byte to read.
+    * @throws IOException If the channel cannot be read.
+    */
+   static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      long next = position;
+      while (buffer.hasRemaining())
+      {
+         int read = channel.read(buffer, next);
+         if (read < 0)
+         {
+            return;
+         }
+         next += read;
+      }
+   }
+
+   /**
+    * Method valuesBytes finds the size of all of the cases together, which is the size of the file after the header.
+    *
+    * @return The number of bytes.
+    */
+   long valuesBytes()
+   {
+      return (long) rowValues * valueBytes * numberCases;
+   }
+
+   /**
+    * Method readCase copies a single case out of the dataset.
+    *
+    * @param tc The index of the case.
+    * @param inputs The array receiving the input activations, or null to skip them.
+    * @param truth The array receiving the expected outputs, or null to skip them.
+    */
+   public void readCase(int tc, double[] inputs, double[] truth)
+   {
+      long index = (long) tc * rowValues;
+      if (inputs != null)
+      {
+         readValues((int) index, inputs, inputNodes);
+      }
+      if (truth != null)
+      {
+         readValues((int) (index + inputNodes), truth, outputNodes);
+      }
+   }
+
+   /**
+    * Method readInputs copies the input activations of the first rows.length cases.
+    *
+    * @param rows The arrays receiving the input activations, one per case.
+    */
+   public void readInputs(double[][] rows)
+   {
+      for (int tc = 0; tc < rows.length; tc++)
+      {
+         readCase(tc, rows[tc], null);
+      }
+   }
+
+   /**
+    * Method readTruths copies the expected outputs of the first rows.length cases.
+    *
+    * @param rows The arrays receiving the expected outputs, one per case.
+    */
+   public void readTruths(double[][] rows)
+   {
+      for (int tc = 0; tc < rows.length; tc++)
+      {
+         readCase(tc, null, rows[tc]);
+      }
+   }
+
+   /**
+    * Method readValues copies consecutive values out of the mapped file, using a bulk copy when they are stored as doubles.
+    *
+    * @param index The index of the first value, counting from the first value after the header.
+    * @param values The array receiving the values.
+    * @param count The number of values.
+    */
+   void readValues(int index, double[] values, int count)
+   {
+      if (doubles != null)
+      {
+         doubles.get(index, values, 0, count);
+      }
+      else
+      {
+         for (int i = 0; i < count; i++)
+         {
+            values[i] = floats.get(index + i);
+         }
+      }
+   }
+
+   /**
+    * Method write writes trial cases and truths into a dataset file.
+    *
+    * @param filename The name of the dataset file.
+    * @param trialCases The input activations, one row per case.
+    * @param truths The expected outputs, one row per case.
+    * @param singlePrecision True to store the values as floats, false to store them as doubles.
+    * @throws IOException If the file cannot be written.
+    */
+   public static void write(String filename, double[][] trialCases, double[][] truths, boolean singlePrecision)
+         throws IOException
+   {
+      int inputNodes = trialCases.length > 0 ? trialCases[0].length : 0;
+      int outputNodes = truths.length > 0 ? truths[0].length : 0;
+      MappedByteBuffer mapped = create(filename, trialCases.length, inputNodes, outputNodes, singlePrecision);
+      for (int tc = 0; tc < trialCases.length; tc++)
+      {
+         putValues(mapped, trialCases[tc], singlePrecision);
+         putValues(mapped, truths[tc], singlePrecision);
+      }
+      mapped.force();
+   }
+
+   /**
+    * Method create makes a dataset file of the given shape and maps it for writing. The header is written and the buffer is
+    * left positioned at the first case, so the rows may be put in order, or at their own offsets by any number of threads
+    * through duplicates of the buffer. The file is closed; the mapping stays valid until the buffer is collected.
+    *
+    * @param filename The name of the dataset file.
+    * @param numberCases The number of cases.
+    * @param inputNodes The input activations per case.
+    * @param outputNodes The expected outputs per case.
+    * @param singlePrecision True to store the values as floats, false to store them as doubles.
+    * @return The little endian buffer of the whole file.
+    * @throws IOException If the file cannot be written.
+    */
+   public static MappedByteBuffer create(String filename, int numberCases, int inputNodes, int outputNodes,
+         boolean singlePrecision) throws IOException
+   {
+      int valueBytes = singlePrecision ? Float.BYTES : Double.BYTES;
+      long size = HEADER_BYTES + (long) numberCases * (inputNodes + outputNodes) * valueBytes;
+      if (size > Integer.MAX_VALUE)
+      {
+         throw new IOException(filename + " would be too large to map at once, write it in parts instead");
+      }
+
+      try (RandomAccessFile file = new RandomAccessFile(filename, "rw"); FileChannel channel = file.getChannel())
+      {
+         file.setLength(size);
+         MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+         mapped.order(ByteOrder.LITTLE_ENDIAN);
+         mapped.putInt(MAGIC).putInt(VERSION).putInt(numberCases).putInt(inputNodes).putInt(outputNodes).putInt(valueBytes);
+         return mapped;
+      }
+   }
+
+   /**
+    * Method putValues appends a row of values to the buffer.
+    *
+    * @param buffer The buffer.
+    * @param values The values.
+    * @param singlePrecision True to store the values as floats.
+    */
+   static void putValues(ByteBuffer buffer, double[] values, boolean singlePrecision)
+   {
+      for (int i = 0; i < values.length; i++)
+      {
+         if (singlePrecision)
+         {
+            buffer.putFloat((float) values[i]);
+         }
+         else
+         {
+            buffer.putDouble(values[i]);
+         }
+      }
+   }
+
+   /**
+    * Method readRows reads a text file in the trial cases or truths format, one row per non-empty line.
+    *
+    * @param filename The name of the text file.
+    * @return The rows.
+    * @throws IOException If the file cannot be read.
+    */
+   static double[][] readRows(String filename) throws IOException
+   {
+      List<double[]> rows = new ArrayList<>();
+      try (BufferedReader br = new BufferedReader(new FileReader(filename)))
+      {
+         String line;
+         while ((line = br.readLine()) != null)
+         {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty())
+            {
+               String[] split = trimmed.split("\\s+");
+               double[] row = new double[split.length];
+               for (int i = 0; i < split.length; i++)
+               {
+                  row[i] = Double.parseDouble(split[i]);
+               }
+               rows.add(row);
+            }
+         }
+      }
+      return rows.toArray(new double[0][]);
+   }
+}
@@ -0,0 +1,74 @@
+package src;
+
+/**
+ * The Bitmap class is a decoded image: its pels in one flat array, row after row from the top of the image down, and the few
+ * header fields worth keeping when the image is written back out. Each pel is a true color 0x00RRGGBB value; 32-bit images
+ * keep their fourth byte in the top byte, as DibDump always has. A Bitmap is made by an ImageDecoder and written by
+ * BmpCodec.encode, and has no ties to the file it came from, so any number of them may be worked on at once.
+ */
+public class Bitmap
+{
+   int width;
+   int height;
+   int[] pels;                                   // The pel in row r and column c is pels[r * width + c], row 0 at the top.
+   int bitCount;                                 // The color depth of the file the bitmap was decoded from.
+   int xPelsPerMeter;
+   int yPelsPerMeter;
+
+   /**
+    * Creates a black bitmap.
+    *
+    * @param width The number of columns.
+    * @param height The number of rows.
+    */
+   public Bitmap(int width, int height)
+   {
+      if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE)
+      {
+         throw new IllegalArgumentException("Bitmap size " + width + "x" + height + " not accepted, terminating.");
+      }
+      this.width = width;
+      this.height = height;
+      pels = new int[width * height];
+      bitCount = BmpCodec.TRUE_COLOR_BITS;
+   }
+
+   /**
+    * Method pel gives the pel at a row and column.
+    *
+    * @param row The row, 0 at the top.
+    * @param column The column, 0 at the left.
+    * @return The pel.
+    */
+   public int pel(int row, int column)
+   {
+      return pels[row * width + column];
+   }
+
+   /**
+    * Method setPel changes the pel at a row and column.
+    *
+    * @param row The row, 0 at the top.
+    * @param column The column, 0 at the left.
+    * @param pel The new pel.
+    */
+   public void setPel(int row, int column, int pel)
+   {
+      pels[row * width + column] = pel;
+   }
+
+   /**
+    * Method toArray copies the pels into one array per row, the layout of DibDump's imageArray.
+    *
+    * @return The rows, top row first.
+    */
+   public int[][] toArray()
+   {
+      int[][] rows = new int[height][width];
+      for (int r = 0; r < height; r++)
+      {
+         System.arraycopy(pels, r * width, rows[r], 0, width);
+      }
+      return rows;
+   }
+}
@@ -0,0 +1,260 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The BitmapPipeline class turns a directory of bitmaps into one dataset file in a single process, and may then train on it
+ * and render the outputs, which runBitmaps.py did with a new java process for every image and every step. The bitmaps are
+ * decoded on a pool of threads, one thread per processor, each taking an equal share of the files. Each image is centered and
+ * converted to grayscale activations as DibDump converts it, and its row is put straight into the mapped dataset file (see
+ * BinaryDataset), so no text is written or parsed.
+ *
+ * Usage: java src.BitmapPipeline bitmapDirectory datasetFile [truths [inputsFile [outputsDirectory]]]
+ * - bitmapDirectory holds the images, every file with the extension of an ImageDecoder, so bitmaps, graymaps, pixmaps and
+ *   raw grayscale dumps may be mixed. They are taken in order of their names and must all be the same size.
+ * - datasetFile is the dataset file to write, with one case per bitmap.
+ * - truths is either SELF, the default, to make each image's activations its own expected outputs as runBitmaps.py did, or a
+ *   truths file with one line per bitmap, in the same order.
+ * - inputsFile, if given, is an inputs file whose perceptron is then trained on the dataset. Its number of trial cases must
+ *   not be more than the number of bitmaps.
+ * - outputsDirectory, by default the current directory, receives the final outputs, OUTPUTS_FILE, and, when the perceptron
+ *   has an output for every pel, each image as the perceptron sees it, named after the bitmap with RENDERED_EXTENSION.
+ */
+public class BitmapPipeline
+{
+   static final String RENDERED_EXTENSION = ".out.bmp";
+   static final String SELF = "self";
+   static final String OUTPUTS_FILE = "finalOuts.txt";
+
+   List<Path> bitmaps;                           // The images, in order of their names.
+   List<ImageDecoder> decoders;
+   int width;                                    // The size every bitmap must have.
+   int height;
+   int pool;                                     // The number of threads.
+
+   /**
+    * Creates a pipeline for the bitmaps of a directory, reading the first one for the size of them all.
+    *
+    * @param directory The directory of bitmaps.
+    * @throws IOException If the directory or the first bitmap cannot be read.
+    */
+   public BitmapPipeline(Path directory) throws IOException
+   {
+      decoders = ImageDecoder.decoders();
+      bitmaps = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+      {
+         for (Path path : stream)
+         {
+            String name = path.getFileName().toString();
+            if (ImageDecoder.isImage(decoders, name) && !name.endsWith(RENDERED_EXTENSION))  // Skips an earlier run's outputs.
+            {
+               bitmaps.add(path);
+            }
+         }
+      }
+      if (bitmaps.isEmpty())
+      {
+         throw new IllegalArgumentException("Directory " + directory + " has no bitmaps, terminating.");
+      }
+      bitmaps.sort(null);
+      Bitmap first = decode(bitmaps.get(0), null);
+      width = first.width;
+      height = first.height;
+      pool = Math.min(Runtime.getRuntime().availableProcessors(), bitmaps.size());
+   }
+
+   /**
+    * Converts a directory of bitmaps into a dataset file, then optionally trains on it and renders the outputs.
+    *
+    * @param args The bitmap directory, the dataset file, and optionally the truths, the inputs file and the outputs directory.
+    * @throws IOException If a file cannot be read or written.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      BitmapPipeline pipeline = new BitmapPipeline(Paths.get(args[0]));
+      String datasetFile = args[1];
+      String truthsFile = args.length > 2 ? args[2] : SELF;
+
+      double[][] truths = truthsFile.equals(SELF) ? null : BinaryDataset.readRows(truthsFile);
+      long startTime = System.nanoTime();
+      pipeline.convert(datasetFile, truths);
+      double seconds = (System.nanoTime() - startTime) / 1E9;
+      System.out.printf("Converted %d %dx%d bitmaps in %.3f s, %.0f bitmaps per second, on %d threads%n",
+            pipeline.bitmaps.size(), pipeline.width, pipeline.height, seconds, pipeline.bitmaps.size() / seconds, pipeline.pool);
+
+      if (args.length > 3)
+      {
+         Path outputsDirectory = Paths.get(args.length > 4 ? args[4] : ".");
+         Files.createDirectories(outputsDirectory);
+         String outputsFile = outputsDirectory.resolve(OUTPUTS_FILE).toString();
+         try (Trainer trainer = new Trainer(args[3], datasetFile, datasetFile, outputsFile))
+         {
+            trainer.train();
+            if (trainer.outputNodes == pipeline.width * pipeline.height)
+            {
+               pipeline.render(BinaryDataset.readRows(outputsFile), outputsDirectory);
+               System.out.println("Rendered the outputs to " + outputsDirectory);
+            }
+         }
+      }
+   }
+
+   /**
+    * Method convert writes the dataset file, decoding the bitmaps on the pool of threads. Each thread writes the rows of its
+    * own bitmaps through its own view of the mapped file, so the threads share nothing but the file.
+    *
+    * @param datasetFile The name of the dataset file.
+    * @param truths The expected outputs, one row per bitmap, or null to use each image's activations.
+    * @throws IOException If the dataset file cannot be written.
+    */
+   public void convert(String datasetFile, double[][] truths) throws IOException
+   {
+      int numberCases = bitmaps.size();
+      int inputNodes = width * height;
+      int outputNodes = truths == null ? inputNodes : truths.length > 0 ? truths[0].length : 0;
+      if (truths != null && truths.length != numberCases)
+      {
+         throw new IllegalArgumentException("The truths file has " + truths.length + " lines for " + numberCases +
+               " bitmaps, terminating.");
+      }
+      MappedByteBuffer mapped = BinaryDataset.create(datasetFile, numberCases, inputNodes, outputNodes, false);
+      int rowBytes = (inputNodes + outputNodes) * Double.BYTES;
+
+      runAll(thread ->
+      {
+         ByteBuffer view = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+         double[] activations = new double[inputNodes];
+         Bitmap centered = new Bitmap(width, height);                              // Kept from one bitmap to the next.
+         int[] gray = new int[inputNodes];
+         Bitmap reused = null;                                                     // The last image decoded, to decode into.
+         for (int tc = thread; tc < numberCases; tc += pool)
+         {
+            Bitmap bitmap = decode(bitmaps.get(tc), reused);
+            reused = bitmap;
+            if (bitmap.width != width || bitmap.height != height)
+            {
+               throw new IllegalArgumentException("Bitmap " + bitmaps.get(tc) + " is " + bitmap.width + "x" + bitmap.height +
+                     ", not " + width + "x" + height + ", terminating.");
+            }
+            DibDump.scaledPels(DibDump.centeredGrayscale(bitmap, centered, gray), activations);
+            view.position(BinaryDataset.HEADER_BYTES + tc * rowBytes);
+            BinaryDataset.putValues(view, activations, false);
+            BinaryDataset.putValues(view, truths == null ? activations : truths[tc], false);
+         }
+      });
+      mapped.force();
+   }
+
+   /**
+    * Method decode reads an image of any format the decoders know.
+    *
+    * @param path The image file.
+    * @param reuse A bitmap to decode into if it has the image's size, or null.
+    * @return The decoded image.
+    * @throws IOException If the file cannot be read.
+    */
+   Bitmap decode(Path path, Bitmap reuse) throws IOException
+   {
+      ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+      return ImageDecoder.forFile(decoders, path.getFileName().toString(), file).decode(file, reuse);
+   }
+
+   /**
+    * Method render writes each case's outputs as a grayscale bitmap named after the case's bitmap.
+    *
+    * @param outputs The outputs, one row of width * height activations per case.
+    * @param outputsDirectory The directory to write the bitmaps to.
+    * @throws IOException If a bitmap cannot be written.
+    */
+   public void render(double[][] outputs, Path outputsDirectory) throws IOException
+   {
+      runAll(thread ->
+      {
+         Bitmap rendered = new Bitmap(width, height);                              // Kept from one case to the next.
+         for (int tc = thread; tc < outputs.length; tc += pool)
+         {
+            String name = bitmaps.get(tc).getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            name = (dot > 0 ? name.substring(0, dot) : name) + RENDERED_EXTENSION;
+            BmpCodec.encode(DibDump.render(outputs[tc], rendered), outputsDirectory.resolve(name));
+         }
+      });
+   }
+
+   /**
+    * The work of one thread of the pool, which takes every pool-th bitmap starting from its own number.
+    */
+   interface Share
+   {
+      void run(int thread) throws IOException;
+   }
+
+   /**
+    * Method runAll runs one share for every thread of the pool and waits for them all, passing on the first failure.
+    *
+    * @param share The work of each thread.
+    * @throws IOException If a share failed to read or write a file.
+    */
+   void runAll(Share share) throws IOException
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(pool, runnable ->
+      {
+         Thread thread = new Thread(runnable, "Bitmap pipeline");
+         thread.setDaemon(true);
+         return thread;
+      });
+      List<Future<?>> futures = new ArrayList<>();
+      for (int k = 0; k < pool; k++)
+      {
+         int thread = k;
+         futures.add(executor.submit(() ->
+         {
+            share.run(thread);
+            return null;
+         }));
+      }
+      try
+      {
+         for (Future<?> future : futures)
+         {
+            future.get();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Bitmap pipeline interrupted, terminating.");
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof IOException)
+         {
+            throw (IOException) cause;
+         }
+         if (cause instanceof RuntimeException)
+         {
+            throw (RuntimeException) cause;
+         }
+         throw new IllegalStateException("Bitmap pipeline failed, terminating.", cause);
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+}
@@ -0,0 +1,416 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The BmpCodec class decodes Windows bitmap files into Bitmaps and encodes Bitmaps as 24-bit bitmap files. It keeps no state,
+ * so any number of threads may decode and encode at once. It is the BMP format of ImageDecoder.
+ *
+ * A file is read whole and its fields are read out of a little endian ByteBuffer by offset, instead of one byte at a time with
+ * the byte swapping of the original DibDump. The layout is:
+ *    BITMAPFILEHEADER (14 bytes): bfType "BM", bfSize, two reserved words, bfOffBits, the offset of the pels.
+ *    BITMAPINFOHEADER (biSize bytes, 40 or more): biWidth, biHeight (negative for a top down image), biPlanes, biBitCount,
+ *       biCompression, biSizeImage, biXPelsPerMeter, biYPelsPerMeter, biClrUsed, biClrImportant. The later versions of the
+ *       header (V2 to V5) go on with the red, green, blue and alpha masks. The OS/2 BITMAPCOREHEADER (12 bytes) has only a
+ *       16-bit width, height, planes and bit count.
+ *    The masks, after a 40-byte header with BI_BITFIELDS or BI_ALPHABITFIELDS compression.
+ *    The color table, for 1, 2, 4 and 8-bit images: one blue, green, red, reserved quad per color (a triple in OS/2 files).
+ *    The pels, one scan line after another from the bottom of the image up, each padded to a multiple of 4 bytes.
+ * Every color depth is decoded: 1, 2, 4 and 8-bit through the color table; 16 and 32-bit through masks, 5 bits each of red,
+ * green and blue by default for 16-bit, each color scaled up to 8 bits; 24-bit; and uncompressed 32-bit, whose fourth byte is
+ * kept in the top byte of the pel, as DibDump always kept it. Besides uncompressed files (BI_RGB), 16 and 32-bit images with
+ * masks (BI_BITFIELDS, BI_ALPHABITFIELDS) and run length encoded 4 and 8-bit images (BI_RLE4, BI_RLE8) are decoded.
+ * Embedded JPEG and PNG images are not. Every size and offset in the headers is checked against the file before the bitmap is
+ * made, so a damaged file is rejected with an IllegalArgumentException instead of reading past its end or allocating pels it
+ * cannot hold. Run lengths are taken to cover at most MAX_RUN_LENGTH_PELS_PER_BYTE pels per byte.
+ */
+public class BmpCodec implements ImageDecoder
+{
+   static final int BF_TYPE = 0x4D42;             // "BM" when read as a little endian word.
+   static final int FILE_HEADER_BYTES = 14;
+   static final int CORE_HEADER_BYTES = 12;       // The OS/2 header.
+   static final int INFO_HEADER_BYTES = 40;
+   static final int BI_RGB = 0;
+   static final int BI_RLE8 = 1;
+   static final int BI_RLE4 = 2;
+   static final int BI_BITFIELDS = 3;
+   static final int BI_ALPHABITFIELDS = 6;
+   static final int TRUE_COLOR_BITS = 24;
+   static final int MAX_COLORS = 256;             // The largest color table, for 8-bit images.
+   static final int MAX_RUN_LENGTH_PELS_PER_BYTE = 1 << 12;      // The most pels a byte of run lengths is taken to cover.
+   static final int[] RGB_555_MASKS = {0x7C00, 0x03E0, 0x001F, 0};
+
+   /**
+    * The position and size of one color's bits within a 16 or 32-bit pel, found from its mask.
+    */
+   static class Channel
+   {
+      int mask;
+      int shift;                                  // The position of the lowest bit of the mask.
+      int bits;                                   // The number of bits of the mask.
+
+      Channel(int mask)
+      {
+         this.mask = mask;
+         shift = mask == 0 ? 0 : Integer.numberOfTrailingZeros(mask);
+         bits = Integer.bitCount(mask);
+      }
+
+      /**
+       * Method get takes the color out of a pel and scales it to 8 bits by repeating its bits, so that its largest value
+       * becomes 255.
+       *
+       * @param pel The pel as stored in the file.
+       * @return The color, from 0 to 255.
+       */
+      int get(int pel)
+      {
+         if (bits == 0)
+         {
+            return 0;
+         }
+         int value = (pel & mask) >>> shift;
+         if (bits >= 8)
+         {
+            return value >>> (bits - 8);
+         }
+         int color = 0;
+         for (int position = 8 - bits; position > -bits; position -= bits)
+         {
+            color |= position >= 0 ? value << position : value >>> -position;
+         }
+         return color;
+      }
+   }
+
+   /**
+    * Method decode reads a bitmap file.
+    *
+    * @param path The bitmap file.
+    * @return The decoded bitmap.
+    * @throws IOException If the file cannot be read.
+    */
+   public static Bitmap decode(Path path) throws IOException
+   {
+      return decode(ByteBuffer.wrap(Files.readAllBytes(path)));
+   }
+
+   /**
+    * Method decode decodes a bitmap file held in a buffer, from the buffer's position on. The buffer itself is not changed.
+    *
+    * @param file The contents of the bitmap file.
+    * @return The decoded bitmap.
+    */
+   public static Bitmap decode(ByteBuffer file)
+   {
+      return ((BmpCodec) BMP).decode(file, null);
+   }
+
+   public String[] extensions()
+   {
+      return new String[] {".bmp", ".dib"};
+   }
+
+   public boolean accepts(String name, ByteBuffer file)
+   {
+      int start = file.position();
+      return file.remaining() >= 2 && (file.get(start) & 0xFF) == (BF_TYPE & 0xFF)
+            && (file.get(start + 1) & 0xFF) == BF_TYPE >> 8;
+   }
+
+   public Bitmap decode(ByteBuffer file, Bitmap reuse)
+   {
+      ByteBuffer in = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      int start = in.position();
+      if (in.remaining() < FILE_HEADER_BYTES + CORE_HEADER_BYTES || (in.getShort(start) & 0xFFFF) != BF_TYPE)
+      {
+         throw new IllegalArgumentException("File is not a bitmap, terminating.");
+      }
+      int offBits = in.getInt(start + 10);
+      int infoStart = start + FILE_HEADER_BYTES;
+      int biSize = in.getInt(infoStart);
+      boolean core = biSize == CORE_HEADER_BYTES;
+      if (!core && (biSize < INFO_HEADER_BYTES || (long) infoStart + biSize > in.limit()))
+      {
+         throw new IllegalArgumentException("Bitmap header of " + biSize + " bytes not supported, terminating.");
+      }
+      int width = core ? in.getShort(infoStart + 4) & 0xFFFF : in.getInt(infoStart + 4);
+      int height = core ? in.getShort(infoStart + 6) : in.getInt(infoStart + 8);
+      int bitCount = in.getShort(infoStart + (core ? 10 : 14)) & 0xFFFF;
+      int compression = core ? BI_RGB : in.getInt(infoStart + 16);
+      int clrUsed = core ? 0 : in.getInt(infoStart + 32);
+      boolean topDown = height < 0;                                          // A top down image is stored right side up.
+      height = Math.abs(height);
+      if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE)
+      {
+         throw new IllegalArgumentException("Bitmap size " + width + "x" + height + " not accepted, terminating.");
+      }
+      if (bitCount != 1 && bitCount != 2 && bitCount != 4 && bitCount != 8 && bitCount != 16 && bitCount != 24
+            && bitCount != 32)
+      {
+         throw new IllegalArgumentException("Bitmap color depth " + bitCount + " not supported, terminating.");
+      }
+
+      int[] masks = RGB_555_MASKS;
+      int tableStart = infoStart + biSize;
+      if (compression == BI_BITFIELDS || compression == BI_ALPHABITFIELDS)
+      {
+         if (bitCount != 16 && bitCount != 32)
+         {
+            throw new IllegalArgumentException("Bitmap masks with color depth " + bitCount + " not supported, terminating.");
+         }
+         boolean alpha = compression == BI_ALPHABITFIELDS || biSize >= INFO_HEADER_BYTES + 16;
+         if (infoStart + INFO_HEADER_BYTES + (alpha ? 16 : 12) > in.limit())
+         {
+            throw new IllegalArgumentException("Bitmap color masks run past the end of the file, terminating.");
+         }
+         masks = new int[] {in.getInt(infoStart + 40), in.getInt(infoStart + 44), in.getInt(infoStart + 48),
+               alpha ? in.getInt(infoStart + 52) : 0};                         // Inside a V2 or later header, or just after.
+         if (biSize == INFO_HEADER_BYTES)
+         {
+            tableStart += compression == BI_ALPHABITFIELDS ? 16 : 12;
+         }
+      }
+      else if (compression == BI_RLE8 && bitCount != 8 || compression == BI_RLE4 && bitCount != 4)
+      {
+         throw new IllegalArgumentException("Bitmap compression " + compression + " with color depth " + bitCount +
+               " not supported, terminating.");
+      }
+      else if (compression != BI_RGB && compression != BI_RLE8 && compression != BI_RLE4)
+      {
+         throw new IllegalArgumentException("Bitmap compression " + compression + " not supported, terminating.");
+      }
+
+      int colors = bitCount <= 8 ? 1 << bitCount : 0;
+      if (colors > 0 && clrUsed > 0)
+      {
+         colors = Math.min(clrUsed, MAX_COLORS);
+      }
+      int entryBytes = core ? 3 : 4;
+      if (tableStart + (long) entryBytes * colors > in.limit())
+      {
+         throw new IllegalArgumentException("Bitmap color table runs past the end of the file, terminating.");
+      }
+      if (offBits < 0 || start + (long) offBits > in.limit())
+      {
+         throw new IllegalArgumentException("Bitmap pels offset " + offBits + " is outside the file, terminating.");
+      }
+      int pelsStart = offBits > 0 ? start + offBits : tableStart + entryBytes * colors;
+      boolean runLengths = compression == BI_RLE8 || compression == BI_RLE4;
+      long stride = rowBytes(width, bitCount);
+      if (runLengths ? (long) width * height > (long) MAX_RUN_LENGTH_PELS_PER_BYTE * (in.limit() - pelsStart)
+            : pelsStart + stride * height > in.limit())
+      {
+         throw new IllegalArgumentException("Bitmap is shorter than its header says, terminating.");
+      }
+
+      Bitmap bitmap = reuse != null && reuse.width == width && reuse.height == height ? reuse : new Bitmap(width, height);
+      bitmap.bitCount = bitCount;
+      bitmap.xPelsPerMeter = core ? 0 : in.getInt(infoStart + 24);
+      bitmap.yPelsPerMeter = core ? 0 : in.getInt(infoStart + 28);
+
+      int[] colorTable = new int[MAX_COLORS];
+      for (int i = 0; i < colors; i++)
+      {
+         int entry = tableStart + entryBytes * i;                            // Blue, green, red, and reserved unless OS/2.
+         colorTable[i] = ((in.get(entry + 2) & 0xFF) << 16) | ((in.get(entry + 1) & 0xFF) << 8) | (in.get(entry) & 0xFF);
+      }
+
+      if (runLengths)
+      {
+         decodeRunLengths(in, pelsStart, bitCount, colorTable, bitmap, topDown);
+         return bitmap;
+      }
+      boolean masked = bitCount == 16 || (bitCount == 32 && masks != RGB_555_MASKS);
+      Channel red = new Channel(masks[0]);
+      Channel green = new Channel(masks[1]);
+      Channel blue = new Channel(masks[2]);
+      Channel alpha = new Channel(masks[3]);
+
+      int[] pels = bitmap.pels;
+      for (int fileRow = 0; fileRow < height; fileRow++)
+      {
+         int row = topDown ? fileRow : height - 1 - fileRow;
+         int p = (int) (pelsStart + fileRow * stride);
+         int out = row * width;
+         switch (bitCount)
+         {
+            case 1:
+            case 2:
+            case 4:
+               int mask = (1 << bitCount) - 1;
+               int perByte = 8 / bitCount;
+               for (int c = 0; c < width; c++)                              // The leftmost pel is in the high bits.
+               {
+                  int shift = 8 - bitCount * (c % perByte + 1);
+                  pels[out + c] = colorTable[(in.get(p + c / perByte) >> shift) & mask];
+               }
+               break;
+            case 8:
+               for (int c = 0; c < width; c++)
+               {
+                  pels[out + c] = colorTable[in.get(p + c) & 0xFF];
+               }
+               break;
+            case 24:
+               for (int c = 0; c < width; c++)
+               {
+                  int q = p + 3 * c;
+                  pels[out + c] = ((in.get(q + 2) & 0xFF) << 16) | ((in.get(q + 1) & 0xFF) << 8) | (in.get(q) & 0xFF);
+               }
+               break;
+            case 16:
+            case 32:
+               for (int c = 0; c < width; c++)
+               {
+                  int word = bitCount == 16 ? in.getShort(p + 2 * c) & 0xFFFF : in.getInt(p + 4 * c);
+                  pels[out + c] = masked ? (alpha.get(word) << 24) | (red.get(word) << 16) | (green.get(word) << 8) |
+                        blue.get(word) : word;
+               }
+               break;
+            default:
+               throw new IllegalArgumentException("Bitmap color depth " + bitCount + " not supported, terminating.");
+         }
+      }
+      return bitmap;
+   }
+
+   /**
+    * Method decodeRunLengths decodes the pels of a run length encoded 4 or 8-bit image. The pels come in pairs of bytes: a
+    * count above 0 repeats the next byte's color that many times (alternating its two nibbles for 4-bit images), and a count of
+    * 0 is followed by 0 for the end of a line, 1 for the end of the image, 2 for a jump right and up by the next two bytes, or
+    * the number of pels in a run of single colors, padded to an even number of bytes. Pels that no run reaches keep color 0.
+    *
+    * @param in The little endian contents of the file.
+    * @param p The index of the first pair.
+    * @param bitCount 4 or 8.
+    * @param colorTable The color table.
+    * @param bitmap The bitmap receiving the pels.
+    * @param topDown True if the first line is the top of the image.
+    */
+   static void decodeRunLengths(ByteBuffer in, int p, int bitCount, int[] colorTable, Bitmap bitmap, boolean topDown)
+   {
+      int width = bitmap.width;
+      int height = bitmap.height;
+      int[] pels = bitmap.pels;
+      Arrays.fill(pels, colorTable[0]);
+      int end = in.limit();
+      int fileRow = 0;
+      int column = 0;
+      while (p + 1 < end && fileRow < height)
+      {
+         int count = in.get(p++) & 0xFF;
+         int value = in.get(p++) & 0xFF;
+         if (count > 0)
+         {
+            int out = (topDown ? fileRow : height - 1 - fileRow) * width;
+            for (int k = 0; k < count && column < width; k++)
+            {
+               int index = bitCount == 8 ? value : (k & 1) == 0 ? value >> 4 : value & 0x0F;
+               pels[out + column++] = colorTable[index];
+            }
+         }
+         else if (value == 0)                                                 // End of line.
+         {
+            fileRow++;
+            column = 0;
+         }
+         else if (value == 1)                                                 // End of image.
+         {
+            return;
+         }
+         else if (value == 2)                                                 // Jump.
+         {
+            if (p + 1 >= end)
+            {
+               break;
+            }
+            column += in.get(p++) & 0xFF;
+            fileRow += in.get(p++) & 0xFF;
+         }
+         else                                                                 // A run of value single pels.
+         {
+            int bytes = bitCount == 8 ? value : (value + 1) / 2;
+            if (p + bytes > end || fileRow >= height)
+            {
+               break;
+            }
+            int out = (topDown ? fileRow : height - 1 - fileRow) * width;
+            for (int k = 0; k < value && column < width; k++)
+            {
+               int index = bitCount == 8 ? in.get(p + k) & 0xFF : (in.get(p + k / 2) >> ((k & 1) == 0 ? 4 : 0)) & 0x0F;
+               pels[out + column++] = colorTable[index];
+            }
+            p += bytes + (bytes & 1);
+         }
+      }
+      if (fileRow < height - 1)
+      {
+         throw new IllegalArgumentException("Bitmap run lengths end early, terminating.");
+      }
+   }
+
+   /**
+    * Method encode writes a bitmap as an uncompressed 24-bit bitmap file, in the usual bottom up order.
+    *
+    * @param bitmap The bitmap.
+    * @param path The file to write.
+    * @throws IOException If the file cannot be written.
+    */
+   public static void encode(Bitmap bitmap, Path path) throws IOException
+   {
+      Files.write(path, encode(bitmap).array());
+   }
+
+   /**
+    * Method encode builds the contents of a 24-bit bitmap file.
+    *
+    * @param bitmap The bitmap.
+    * @return A buffer holding the whole file.
+    */
+   public static ByteBuffer encode(Bitmap bitmap)
+   {
+      int width = bitmap.width;
+      int height = bitmap.height;
+      int stride = (int) rowBytes(width, TRUE_COLOR_BITS);
+      int offBits = FILE_HEADER_BYTES + INFO_HEADER_BYTES;
+      int sizeImage = stride * height;
+      ByteBuffer out = ByteBuffer.allocate(offBits + sizeImage).order(ByteOrder.LITTLE_ENDIAN);
+
+      out.putShort((short) BF_TYPE).putInt(offBits + sizeImage).putShort((short) 0).putShort((short) 0).putInt(offBits);
+      out.putInt(INFO_HEADER_BYTES).putInt(width).putInt(height).putShort((short) 1).putShort((short) TRUE_COLOR_BITS)
+            .putInt(BI_RGB).putInt(sizeImage).putInt(bitmap.xPelsPerMeter).putInt(bitmap.yPelsPerMeter).putInt(0).putInt(0);
+
+      int[] pels = bitmap.pels;
+      for (int row = height - 1; row >= 0; row--)                             // Bottom row first.
+      {
+         int p = offBits + (height - 1 - row) * stride;
+         int in = row * width;
+         for (int c = 0; c < width; c++)
+         {
+            int pel = pels[in + c];
+            out.put(p++, (byte) pel);                                           // Blue, green, red.
+            out.put(p++, (byte) (pel >> 8));
+            out.put(p++, (byte) (pel >> 16));
+         }
+      }                                                                        // The padding bytes are already zero.
+      return out;
+   }
+
+   /**
+    * Method rowBytes gives the bytes in one scan line, padded to a multiple of 4.
+    *
+    * @param width The pels in a row.
+    * @param bitCount The bits per pel.
+    * @return The bytes per scan line.
+    */
+   static long rowBytes(int width, int bitCount)
+   {
+      return ((long) width * bitCount + 31) / 32 * 4;
+   }
+}
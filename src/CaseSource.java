@@ -0,0 +1,40 @@
+package src;
+
+import java.io.Closeable;
+
+/**
+ * The CaseSource interface is where a Trainer gets its trial cases and truths from during a step. The cases are handed out in
+ * blocks. Each block points the caller's arrays at rows owned by the source, and the rows stay valid until the next call to
+ * nextBlock or rewind. This lets an in-memory source hand out its rows without copying them, and lets a streaming source reuse
+ * a fixed set of rows no matter how many cases there are. A source is closed by the Trainer that uses it.
+ */
+public interface CaseSource extends Closeable
+{
+   /**
+    * Method numberCases returns the number of cases in one pass over the source.
+    *
+    * @return The number of cases.
+    */
+   int numberCases();
+
+   /**
+    * Method rewind starts a new pass over the cases.
+    *
+    * @param shuffled True to allow the source to hand the cases out in a shuffled order, false to hand them out in file order.
+    */
+   void rewind(boolean shuffled);
+
+   /**
+    * Method nextBlock hands out the next block of cases of the current pass.
+    *
+    * @param inputs The array whose elements are pointed at the input activations of the cases in the block.
+    * @param truths The array whose elements are pointed at the expected outputs of the cases in the block.
+    * @return The number of cases in the block, at most inputs.length, or 0 once the pass is over.
+    */
+   int nextBlock(double[][] inputs, double[][] truths);
+
+   /**
+    * Method close releases the files and threads that the source holds. No more cases are handed out afterwards.
+    */
+   void close();
+}
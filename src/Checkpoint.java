@@ -0,0 +1,301 @@
+package src;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * The Checkpoint class saves and loads the trained weights of a Perceptron together with the state of the Trainer that was
+ * training it, so that a long run can be resumed, or a trained network used, without training from the beginning.
+ *
+ * A checkpoint file is little endian, like the dataset files. It holds, in order:
+ *    magic (MAGIC), version (VERSION), weight layout, number of activation layers, the nodes in each activation layer,
+ *    the length of the activation function's name and the name in ASCII, counter, lambda, prevError, currError, number of
+ *    weights, and the weights in the stored layout.
+ * Version 1 files, written before the activation function was saved, are still read, and leave the function to the reader.
+ *
+ * Files are written to a temporary file first and then moved into place, so a checkpoint that is cut short by a crash never
+ * replaces the previous one.
+ */
+public class Checkpoint
+{
+   static final int MAGIC = 0x504B4350;          // "PCKP" when read as little endian bytes.
+   static final int VERSION = 2;
+   static final int FIRST_VERSION = 1;           // The oldest version load reads, which has no activation function.
+
+   Perceptron.WeightLayout layout;
+   int[] layerNodes;                             // The nodes in each activation layer, input layer first.
+   String activation;                            // The name of the activation function, or null in a version 1 file.
+   int counter;
+   double lambda;
+   double prevError;
+   double currError;
+   double[] weights;
+
+   /**
+    * Method size finds the number of bytes in a checkpoint of the given perceptron.
+    *
+    * @param perceptron The perceptron.
+    * @return The size of its checkpoint file.
+    */
+   static int size(Perceptron perceptron)
+   {
+      return 4 * Integer.BYTES + perceptron.numberActivationLayers * Integer.BYTES + Integer.BYTES
+            + activationName(perceptron).length + Integer.BYTES + 3 * Double.BYTES + Integer.BYTES
+            + perceptron.weights.length * Double.BYTES;
+   }
+
+   /**
+    * Method activationName finds the name of the perceptron's activation function as it is saved, the name that
+    * ActivationFunction.forName reads.
+    *
+    * @param perceptron The perceptron.
+    * @return The name in ASCII.
+    */
+   static byte[] activationName(Perceptron perceptron)
+   {
+      return perceptron.activationFunction.toString().getBytes(StandardCharsets.US_ASCII);
+   }
+
+   /**
+    * Method encode fills a buffer with a checkpoint of the given weights and trainer state.
+    *
+    * @param buffer The buffer, at least size(perceptron) bytes long. It is cleared first and flipped afterwards.
+    * @param perceptron The perceptron whose configuration is saved.
+    * @param weights The weights to save, laid out like the perceptron's. This may be a snapshot rather than the live weights.
+    * @param counter The number of steps taken so far.
+    * @param lambda The current learning factor.
+    * @param prevError The error of the step before the last.
+    * @param currError The error of the last step.
+    */
+   static void encode(ByteBuffer buffer, Perceptron perceptron, double[] weights, int counter, double lambda, double prevError,
+         double currError)
+   {
+      buffer.clear();
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(perceptron.layout.ordinal()).putInt(perceptron.numberActivationLayers);
+      for (int n = 0; n < perceptron.numberActivationLayers; n++)
+      {
+         buffer.putInt(perceptron.layerNodes(n));
+      }
+      byte[] name = activationName(perceptron);
+      buffer.putInt(name.length).put(name);
+      buffer.putInt(counter).putDouble(lambda).putDouble(prevError).putDouble(currError);
+      buffer.putInt(weights.length);
+      buffer.asDoubleBuffer().put(weights);
+      buffer.position(buffer.position() + weights.length * Double.BYTES);
+      buffer.flip();
+   }
+
+   /**
+    * Method write writes an encoded checkpoint to a file, through a temporary file in the same directory.
+    *
+    * @param filename The name of the checkpoint file.
+    * @param buffer The encoded checkpoint, from encode.
+    * @throws IOException If the file cannot be written.
+    */
+   static void write(String filename, ByteBuffer buffer) throws IOException
+   {
+      Path target = Paths.get(filename).toAbsolutePath();
+      Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+      try (RandomAccessFile file = new RandomAccessFile(temporary.toFile(), "rw"); FileChannel channel = file.getChannel())
+      {
+         file.setLength(buffer.remaining());
+         while (buffer.hasRemaining())
+         {
+            channel.write(buffer);
+         }
+         channel.force(false);
+      }
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   /**
+    * Method save writes a checkpoint of the perceptron's current weights, without a background thread.
+    *
+    * @param filename The name of the checkpoint file.
+    * @param perceptron The perceptron.
+    * @param counter The number of steps taken so far.
+    * @param lambda The current learning factor.
+    * @param prevError The error of the step before the last.
+    * @param currError The error of the last step.
+    * @throws IOException If the file cannot be written.
+    */
+   public static void save(String filename, Perceptron perceptron, int counter, double lambda, double prevError, double currError)
+         throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(size(perceptron));
+      encode(buffer, perceptron, perceptron.weights, counter, lambda, prevError, currError);
+      write(filename, buffer);
+   }
+
+   /**
+    * Method load reads a checkpoint file. Every count is checked against the bytes left in the file and every field against
+    * its range before it is used, so a truncated or damaged file gives an IOException like any other unreadable file.
+    *
+    * @param filename The name of the checkpoint file.
+    * @return The checkpoint.
+    * @throws IOException If the file cannot be read or is not a checkpoint file.
+    */
+   public static Checkpoint load(String filename) throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename))).order(ByteOrder.LITTLE_ENDIAN);
+      int version = buffer.remaining() < 4 * Integer.BYTES || buffer.getInt() != MAGIC ? 0 : buffer.getInt();
+      if (version < FIRST_VERSION || version > VERSION)
+      {
+         throw new IOException(filename + " is not a version " + FIRST_VERSION + " to " + VERSION + " checkpoint file");
+      }
+
+      Checkpoint checkpoint = new Checkpoint();
+      int layout = buffer.getInt();
+      if (layout < 0 || layout >= Perceptron.WeightLayout.values().length)
+      {
+         throw new IOException(filename + " has an unknown weight layout " + layout);
+      }
+      checkpoint.layout = Perceptron.WeightLayout.values()[layout];
+      checkpoint.layerNodes = new int[readCount(buffer, Integer.BYTES, filename)];
+      long weights = 0L;                                             // The weights that the layers need.
+      for (int n = 0; n < checkpoint.layerNodes.length; n++)
+      {
+         checkpoint.layerNodes[n] = buffer.getInt();
+         if (checkpoint.layerNodes[n] < 1)
+         {
+            throw new IOException(filename + " has a layer of " + checkpoint.layerNodes[n] + " nodes");
+         }
+         weights += n > 0 ? (long) checkpoint.layerNodes[n - 1] * checkpoint.layerNodes[n] : 0L;
+      }
+      if (checkpoint.layerNodes.length < 2)
+      {
+         throw new IOException(filename + " has " + checkpoint.layerNodes.length + " activation layers");
+      }
+      if (version > FIRST_VERSION)
+      {
+         byte[] name = new byte[readCount(buffer, Byte.BYTES, filename)];
+         buffer.get(name);
+         checkpoint.activation = new String(name, StandardCharsets.US_ASCII);
+         try
+         {
+            ActivationFunction.forName(checkpoint.activation);
+         }
+         catch (IllegalArgumentException e)
+         {
+            throw new IOException(filename + " has an unknown activation function " + checkpoint.activation);
+         }
+      }
+      if (buffer.remaining() < Integer.BYTES + 3 * Double.BYTES)
+      {
+         throw new IOException(filename + " is shorter than a checkpoint file");
+      }
+      checkpoint.counter = buffer.getInt();
+      checkpoint.lambda = buffer.getDouble();
+      checkpoint.prevError = buffer.getDouble();
+      checkpoint.currError = buffer.getDouble();
+      checkpoint.weights = new double[readCount(buffer, Double.BYTES, filename)];
+      if (checkpoint.weights.length != weights)
+      {
+         throw new IOException(filename + " has " + checkpoint.weights.length + " weights for layers that need " + weights);
+      }
+      buffer.asDoubleBuffer().get(checkpoint.weights);
+      return checkpoint;
+   }
+
+   /**
+    * Method readCount reads the count of the array that follows, and checks that the array fits in the rest of the file.
+    *
+    * @param buffer The file, positioned at the count.
+    * @param bytesEach The bytes in each element of the array.
+    * @param filename The name of the file, for the error message.
+    * @return The count.
+    * @throws IOException If the count is missing or negative, or the array runs past the end of the file.
+    */
+   static int readCount(ByteBuffer buffer, int bytesEach, String filename) throws IOException
+   {
+      int count = buffer.remaining() < Integer.BYTES ? -1 : buffer.getInt();
+      if (count < 0 || (long) count * bytesEach > buffer.remaining())
+      {
+         throw new IOException(filename + " is shorter than a checkpoint file");
+      }
+      return count;
+   }
+
+   /**
+    * Method createPerceptron builds a perceptron with the checkpoint's configuration, weight layout and activation function and
+    * gives it the checkpoint's weights, for using a trained network without the inputs file it was trained with. A version 1
+    * checkpoint's perceptron has the default activation function.
+    *
+    * @return The perceptron.
+    */
+   public Perceptron createPerceptron()
+   {
+      int[] hiddenLayerNodes = Arrays.copyOfRange(layerNodes, 1, layerNodes.length - 1);
+      Perceptron perceptron = new Perceptron(layerNodes[0], hiddenLayerNodes, layerNodes[layerNodes.length - 1], layout);
+      System.arraycopy(weights, 0, perceptron.weights, 0, weights.length);
+      if (activation != null)
+      {
+         perceptron.activationFunction = ActivationFunction.forName(activation);
+      }
+      return perceptron;
+   }
+
+   /**
+    * Method checkActivation checks that the network is about to be run with the activation function it was trained with, since
+    * any other gives wrong outputs without any sign of it. A version 1 checkpoint does not say, and accepts any function.
+    *
+    * @param function The activation function the weights will be used with.
+    */
+   public void checkActivation(ActivationFunction function)
+   {
+      if (activation != null && !activation.equals(function.toString()))
+      {
+         throw new IllegalArgumentException("Checkpoint was trained with the " + activation + " activation function, not "
+               + function + ", terminating.");
+      }
+   }
+
+   /**
+    * Method restoreWeights copies the checkpoint's weights into a perceptron with the same configuration, converting them if the
+    * perceptron stores its weights in a different layout.
+    *
+    * @param perceptron The perceptron receiving the weights.
+    */
+   public void restoreWeights(Perceptron perceptron)
+   {
+      boolean matches = layerNodes.length == perceptron.numberActivationLayers;
+      for (int n = 0; matches && n < layerNodes.length; n++)
+      {
+         matches = layerNodes[n] == perceptron.layerNodes(n);
+      }
+      if (!matches || weights.length != perceptron.weights.length)
+      {
+         throw new IllegalArgumentException("Checkpoint does not match the perceptron's configuration, terminating.");
+      }
+
+      if (layout == perceptron.layout)
+      {
+         System.arraycopy(weights, 0, perceptron.weights, 0, weights.length);
+      }
+      else
+      {
+         Perceptron stored = new Perceptron(perceptron.inputNodes, perceptron.hiddenLayerNodes, perceptron.outputNodes, layout);
+         System.arraycopy(weights, 0, stored.weights, 0, weights.length);
+         for (int n = 0; n < layerNodes.length - 1; n++)
+         {
+            for (int source = 0; source < layerNodes[n]; source++)
+            {
+               for (int dest = 0; dest < layerNodes[n + 1]; dest++)
+               {
+                  perceptron.setWeight(n, source, dest, stored.getWeight(n, source, dest));
+               }
+            }
+         }
+      } // if (layout == perceptron.layout)
+   }
+}
@@ -0,0 +1,136 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The CheckpointWriter class writes checkpoints (see Checkpoint) during training on a background thread, so that training does
+ * not wait for the disk. Each checkpoint copies the weights into a snapshot buffer, which the background thread then encodes
+ * and writes while training goes on changing the live weights.
+ *
+ * There is only one snapshot buffer. If the previous checkpoint is still being written when the next one is due, the next one is
+ * skipped rather than making training wait, and the count of skipped checkpoints is kept for the report.
+ */
+public class CheckpointWriter
+{
+   String filename;
+   Perceptron perceptron;
+   double[] snapshot;                            // The weights being written, copied from the perceptron.
+   ByteBuffer buffer;                            // The encoded checkpoint being written.
+   ExecutorService executor;                     // The single background thread.
+   Future<Void> pending;                         // The checkpoint being written, or null if none has been started.
+   int written;                                  // Number of checkpoints started.
+   int skipped;                                  // Number of checkpoints skipped because the previous one was still being written.
+
+   /**
+    * Creates a writer for checkpoints of the given perceptron.
+    *
+    * @param filename The name of the checkpoint file, which each checkpoint replaces.
+    * @param perceptron The perceptron whose weights are saved.
+    */
+   public CheckpointWriter(String filename, Perceptron perceptron)
+   {
+      this.filename = filename;
+      this.perceptron = perceptron;
+      snapshot = new double[perceptron.weights.length];
+      buffer = ByteBuffer.allocate(Checkpoint.size(perceptron));
+      executor = Executors.newSingleThreadExecutor(runnable ->
+      {
+         Thread thread = new Thread(runnable, "Checkpoint writer");
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   /**
+    * Method offer starts writing a checkpoint of the perceptron's current weights, unless the previous checkpoint is still being
+    * written, in which case nothing is written.
+    *
+    * @param counter The number of steps taken so far.
+    * @param lambda The current learning factor.
+    * @param prevError The error of the step before the last.
+    * @param currError The error of the last step.
+    * @return True if the checkpoint was started, false if it was skipped.
+    */
+   public boolean offer(int counter, double lambda, double prevError, double currError)
+   {
+      if (pending != null && !pending.isDone())
+      {
+         skipped++;
+         return false;
+      }
+      await();
+      System.arraycopy(perceptron.weights, 0, snapshot, 0, snapshot.length);
+      pending = executor.submit(() ->
+      {
+         Checkpoint.encode(buffer, perceptron, snapshot, counter, lambda, prevError, currError);
+         Checkpoint.write(filename, buffer);
+         return null;
+      });
+      written++;
+      return true;
+   }
+
+   /**
+    * Method finish waits for any checkpoint still being written and then writes the final one, so that the file holds the
+    * weights at the end of training when this returns.
+    *
+    * @param counter The number of steps taken.
+    * @param lambda The final learning factor.
+    * @param prevError The error of the step before the last.
+    * @param currError The error of the last step.
+    */
+   public void finish(int counter, double lambda, double prevError, double currError)
+   {
+      await();
+      try
+      {
+         Checkpoint.encode(buffer, perceptron, perceptron.weights, counter, lambda, prevError, currError);
+         Checkpoint.write(filename, buffer);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Checkpoint File " + e.toString() + " could not be written, terminating.");
+      }
+      written++;
+      executor.shutdown();
+   }
+
+   /**
+    * Method close stops the background thread once any checkpoint being written is done, for training that ends without
+    * finish being called.
+    */
+   public void close()
+   {
+      executor.shutdown();
+   }
+
+   /**
+    * Method await waits for the checkpoint being written, if any, and passes on any error it met.
+    */
+   void await()
+   {
+      if (pending == null)
+      {
+         return;
+      }
+      try
+      {
+         pending.get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while writing a checkpoint, terminating.");
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalStateException("Checkpoint File " + e.getCause().toString() + " could not be written, terminating.");
+      }
+      pending = null;
+   }
+}
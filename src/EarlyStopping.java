@@ -0,0 +1,204 @@
+package src;
+
+import java.io.IOException;
+
+/**
+ * The EarlyStopping class holds the stopping policies that Trainer.train checks after every step, on top of the minimum error
+ * and maximum number of steps of the input file:
+ * - plateau, which stops once the error has improved by less than a fraction minImprovement over the last plateauWindow steps.
+ * - time budget, which stops once train has run for timeBudget seconds.
+ * - validation, which finds the error of a separate set of held-out cases every validationInterval steps, and stops once it has
+ *   not improved on its best for validationPatience checks in a row. The weights with the best validation error are kept, and
+ *   put back when training stops for this reason, since the later weights only fit the training cases more closely.
+ * Each policy is off unless its setting is given. The checks allocate nothing, so steps stay free of allocation.
+ */
+public class EarlyStopping
+{
+   static final double DEFAULT_MIN_IMPROVEMENT = 0.001;
+   static final int DEFAULT_VALIDATION_INTERVAL = 100;
+   static final int DEFAULT_VALIDATION_PATIENCE = 5;
+
+   int plateauWindow;                            // Steps over which the error must improve, 0 for no plateau detection.
+   double minImprovement;                        // The relative improvement over the window below which training stops.
+   double timeBudget;                            // Seconds that train may run for, 0 for no limit.
+   String validationCasesFile;                   // Cases held out for validation, or null for no validation.
+   String validationTruthsFile;                  // Their truths, or null if the cases file is a binary dataset holding both.
+   int validationInterval;                       // Steps between validation checks.
+   int validationPatience;                       // Validation checks without improvement before training stops.
+
+   double[] windowErrors;                        // The errors of the last plateauWindow steps, indexed by step modulo the window.
+   int steps;                                    // Steps taken since start.
+   long startNanos;
+   double[][] validationInputs;
+   double[][] validationTruths;
+   double[][] validationBlock;                   // The validation cases of the block being run.
+   double validationError;                       // The error of the validation cases at the last check.
+   double bestValidationError;
+   int bestValidationStep;                       // The trainer's step count at the best validation error.
+   int checksWithoutImprovement;
+   double[] bestWeights;                         // The weights at the best validation error.
+
+   /**
+    * Creates the stopping policies with every policy off.
+    */
+   public EarlyStopping()
+   {
+      minImprovement = DEFAULT_MIN_IMPROVEMENT;
+      validationInterval = DEFAULT_VALIDATION_INTERVAL;
+      validationPatience = DEFAULT_VALIDATION_PATIENCE;
+   }
+
+   /**
+    * Method load reads the validation cases, if there are any, and makes the buffers the policies need. It is called once the
+    * trainer's perceptron exists.
+    *
+    * @param trainer The trainer.
+    */
+   void load(Trainer trainer)
+   {
+      if (plateauWindow > 0)
+      {
+         windowErrors = new double[plateauWindow];
+      }
+      if (validationCasesFile == null)
+      {
+         return;
+      }
+      try
+      {
+         if (BinaryDataset.isDataset(validationCasesFile))
+         {
+            BinaryDataset dataset = BinaryDataset.open(validationCasesFile);
+            validationInputs = new double[dataset.numberCases][dataset.inputNodes];
+            validationTruths = new double[dataset.numberCases][dataset.outputNodes];
+            dataset.readInputs(validationInputs);
+            dataset.readTruths(validationTruths);
+         }
+         else
+         {
+            if (validationTruthsFile == null)
+            {
+               throw new IllegalArgumentException("Validation file " + validationCasesFile + " needs a truths file, "
+                     + "terminating.");
+            }
+            validationInputs = BinaryDataset.readRows(validationCasesFile);
+            validationTruths = BinaryDataset.readRows(validationTruthsFile);
+         }
+      }
+      catch (IOException e)
+      {
+         throw new IllegalArgumentException("Validation File " + e.toString() + " not accepted, terminating.");
+      }
+      if (validationInputs.length == 0 || validationInputs.length != validationTruths.length
+            || validationInputs[0].length != trainer.inputNodes || validationTruths[0].length != trainer.outputNodes)
+      {
+         throw new IllegalArgumentException("Validation cases " + validationCasesFile + " do not match the input file, "
+               + "terminating.");
+      }
+      validationBlock = new double[Trainer.BLOCK_CASES][];
+      bestWeights = new double[trainer.perceptron.weights.length];
+   }
+
+   /**
+    * Method start is called when train begins.
+    */
+   void start()
+   {
+      steps = 0;
+      startNanos = System.nanoTime();
+      validationError = Double.NaN;
+      bestValidationError = Double.MAX_VALUE;
+      checksWithoutImprovement = 0;
+   }
+
+   /**
+    * Method check is called after every step, and decides whether training should stop.
+    *
+    * @param trainer The trainer, whose counter and current error are those after the step.
+    * @return The reason to stop, finishing the sentence "Terminated because", or null to go on training.
+    */
+   String check(Trainer trainer)
+   {
+      steps++;
+      if (plateauWindow > 0)
+      {
+         int slot = steps % plateauWindow;
+         double windowStart = windowErrors[slot];                 // The error plateauWindow steps ago.
+         windowErrors[slot] = trainer.currError;
+         if (steps > plateauWindow && windowStart - trainer.currError < minImprovement * windowStart)
+         {
+            return "the error improved by less than a fraction " + minImprovement + " over the last " + plateauWindow
+                  + " steps";
+         }
+      }
+      if (timeBudget > 0.0 && System.nanoTime() - startNanos > timeBudget * 1E9)
+      {
+         return "the time budget of " + timeBudget + " seconds ran out";
+      }
+      if (validationInputs != null && trainer.counter % validationInterval == 0)
+      {
+         validate(trainer);
+         if (checksWithoutImprovement >= validationPatience)
+         {
+            restoreBestWeights(trainer);
+            return "the validation error did not improve for " + validationPatience + " checks, the weights of step "
+                  + bestValidationStep + " were restored";
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Method validate finds the error of the validation cases with the current weights, running them through the network in
+    * batches, and keeps the weights if the error is the best so far.
+    *
+    * @param trainer The trainer.
+    */
+   void validate(Trainer trainer)
+   {
+      Perceptron perceptron = trainer.perceptron;
+      trainer.storeFloatWeights();
+      double error = 0.0;
+      for (int first = 0; first < validationInputs.length; first += Trainer.BLOCK_CASES)
+      {
+         int count = Math.min(Trainer.BLOCK_CASES, validationInputs.length - first);
+         for (int i = 0; i < count; i++)
+         {
+            validationBlock[i] = validationInputs[first + i];
+         }
+         perceptron.runNetwork(validationBlock, 0, count, trainer.blockWorkspaces);
+         for (int i = 0; i < count; i++)
+         {
+            error += Trainer.caseError(perceptron, validationTruths[first + i], trainer.blockWorkspaces[i].outputs());
+         }
+      }
+      validationError = error;
+      if (error < bestValidationError)
+      {
+         bestValidationError = error;
+         bestValidationStep = trainer.counter;
+         checksWithoutImprovement = 0;
+         System.arraycopy(perceptron.weights, 0, bestWeights, 0, bestWeights.length);
+      }
+      else
+      {
+         checksWithoutImprovement++;
+      }
+   }
+
+   /**
+    * Method restoreBestWeights puts back the weights with the best validation error, and finds the training error of those
+    * weights so that the trainer's error describes the weights it ends with.
+    *
+    * @param trainer The trainer.
+    */
+   void restoreBestWeights(Trainer trainer)
+   {
+      System.arraycopy(bestWeights, 0, trainer.perceptron.weights, 0, bestWeights.length);
+      if (trainer.floatPerceptron != null)
+      {
+         trainer.floatPerceptron.loadWeights();
+      }
+      trainer.currError = trainer.totalError();
+   }
+}
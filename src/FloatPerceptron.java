@@ -0,0 +1,261 @@
+package src;
+
+import java.util.Arrays;
+
+/**
+ * The FloatPerceptron class runs and trains the network of a Perceptron with the weights, partials, activations and psi values
+ * stored as floats. This halves the memory traffic of the weights, which dominates training of large networks, and doubles the
+ * number of lanes the vector kernels work on for the weight changes.
+ *
+ * The sums over a whole layer are still added in double (see Kernels): theta in forward propagation and omega in back
+ * propagation, where float rounding would otherwise build up over hundreds of terms. The activation function is also applied in
+ * double, and only its result is stored as a float. The weight changes themselves, lambda * activation * psi, are done in float.
+ *
+ * The Perceptron it was built from supplies the configuration, weight layout, activation function and kernels, and keeps a
+ * double copy of the weights that is only brought up to date by storeWeights, for checkpoints and the outputs file.
+ * Only single threaded training is supported.
+ */
+public class FloatPerceptron
+{
+   Perceptron perceptron;
+   float[] weights;                    // Laid out exactly like Perceptron.weights.
+   float[] partials;
+   float[][] activations;
+   float[][] psi;
+   double[] sums;                      // Theta of the layer being computed, added up in double.
+   float lambda;
+
+   /**
+    * Creates the float form of a perceptron, with its weights rounded to floats.
+    *
+    * @param perceptron The perceptron.
+    */
+   public FloatPerceptron(Perceptron perceptron)
+   {
+      this.perceptron = perceptron;
+      weights = new float[perceptron.weights.length];
+      partials = new float[perceptron.weights.length];
+      activations = new float[perceptron.numberActivationLayers][];
+      psi = new float[perceptron.numberActivationLayers - 1][];
+      int largestLayer = 0;
+      for (int n = 0; n < perceptron.numberActivationLayers; n++)
+      {
+         activations[n] = new float[perceptron.layerNodes(n)];
+         if (n > 0)
+         {
+            psi[n - 1] = new float[perceptron.layerNodes(n)];
+         }
+         largestLayer = Math.max(largestLayer, perceptron.layerNodes(n));
+      }
+      sums = new double[largestLayer];
+      lambda = (float) perceptron.lambda;
+      loadWeights();
+   }
+
+   /**
+    * Method loadWeights rounds the perceptron's double weights to floats, replacing these weights.
+    */
+   public void loadWeights()
+   {
+      for (int w = 0; w < weights.length; w++)
+      {
+         weights[w] = (float) perceptron.weights[w];
+      }
+   }
+
+   /**
+    * Method storeWeights copies these weights into the perceptron's double weights.
+    */
+   public void storeWeights()
+   {
+      for (int w = 0; w < weights.length; w++)
+      {
+         perceptron.weights[w] = weights[w];
+      }
+   }
+
+   /**
+    * Method runNetwork runs one case forward, like Perceptron.runNetwork.
+    *
+    * @param inputs The input activations, which are rounded to floats.
+    */
+   public void runNetwork(double[] inputs)
+   {
+      for (int i = 0; i < activations[0].length; i++)
+      {
+         activations[0][i] = (float) inputs[i];
+      }
+      Kernels kernels = perceptron.kernels;
+      LayerTimes times = perceptron.layerTimes;
+      long mark = times == null ? 0L : System.nanoTime();
+      for (int n = 1; n < activations.length; n++)
+      {
+         float[] sources = activations[n - 1];
+         float[] dests = activations[n];
+         int offset = perceptron.weightOffsets[n - 1];
+         int sStride = perceptron.sourceStride[n - 1];
+         int dStride = perceptron.destStride[n - 1];
+
+         if (dStride == 1)
+         {
+            Arrays.fill(sums, 0, dests.length, 0.0);
+            for (int source = 0; source < sources.length; source++)
+            {
+               kernels.axpy(sources[source], weights, offset + source * sStride, sums, 0, dests.length);
+            }
+         }
+         else
+         {
+            for (int dest = 0; dest < dests.length; dest++)
+            {
+               sums[dest] = kernels.dot(sources, 0, weights, offset + dest * dStride, sources.length);
+            }
+         }
+         for (int dest = 0; dest < dests.length; dest++)
+         {
+            dests[dest] = (float) perceptron.f(sums[dest]);
+         }
+         if (times != null)
+         {
+            mark = times.forward(n - 1, mark);
+         }
+      } // for (int n = 1; n < activations.length; n++)
+   }
+
+   /**
+    * Method outputs returns the output activation layer of the last case run.
+    *
+    * @return The output activations.
+    */
+   public float[] outputs()
+   {
+      return activations[activations.length - 1];
+   }
+
+   /**
+    * Method backProp changes the weights for the last case run, like Perceptron.backProp.
+    *
+    * @param truth The expected outputs.
+    */
+   public void backProp(double[] truth)
+   {
+      propagate(truth, true);
+   }
+
+   /**
+    * Method accumulatePartials adds the weight changes for the last case run into the partials, like
+    * Perceptron.accumulatePartials.
+    *
+    * @param truth The expected outputs.
+    */
+   public void accumulatePartials(double[] truth)
+   {
+      propagate(truth, false);
+   }
+
+   /**
+    * Method applyPartials adds the partials into the weights and clears them, like Perceptron.applyPartials.
+    */
+   public void applyPartials()
+   {
+      for (int w = 0; w < weights.length; w++)
+      {
+         weights[w] += partials[w];
+         partials[w] = 0.0f;
+      }
+   }
+
+   /**
+    * Method caseError finds the error of the last case run, like Trainer.caseError, adding it up in double.
+    *
+    * @param truth The expected outputs.
+    * @return Half of the sum of the squared differences between the truths and the outputs.
+    */
+   public double caseError(double[] truth)
+   {
+      float[] outputs = outputs();
+      double newError = 0.0;
+      for (int i = 0; i < outputs.length; i++)
+      {
+         newError += 0.5 * perceptron.calculateError(truth[i], outputs[i]);
+      }
+      return newError;
+   }
+
+   /**
+    * Method propagate is the float form of Perceptron's back propagation. Omega is found from the weights before this case's
+    * changes, and is added up in double.
+    *
+    * @param truth The expected outputs.
+    * @param applyNow True to change the weights now, false to only add the changes into the partials.
+    */
+   void propagate(double[] truth, boolean applyNow)
+   {
+      Kernels kernels = perceptron.kernels;
+      LayerTimes times = perceptron.layerTimes;
+      long mark = times == null ? 0L : System.nanoTime();              // The output layer's psi counts toward the last layer.
+      int n = activations.length - 1;
+
+      for (int source = 0; source < activations[n].length; source++) // OUTPUT LAYER
+      {
+         double output = activations[n][source];
+         psi[n - 1][source] = (float) ((truth[source] - output) * perceptron.fPrime(output));
+      }
+
+      for (n = activations.length - 2; n >= 0; n--) // HIDDEN LAYERS, then the INPUT LAYER, which needs no omega.
+      {
+         float[] dests = psi[n];
+         int offset = perceptron.weightOffsets[n];
+         int sStride = perceptron.sourceStride[n];
+         int dStride = perceptron.destStride[n];
+
+         for (int source = 0; source < activations[n].length; source++)
+         {
+            float activation = activations[n][source];
+            float change = lambda * activation;
+            double omega = 0.0;
+            int w = offset + source * sStride;
+            if (dStride == 1)
+            {
+               if (n > 0)
+               {
+                  omega = kernels.dot(dests, 0, weights, w, dests.length);
+               }
+               if (applyNow)
+               {
+                  kernels.update(change, dests, partials, weights, w, dests.length);
+               }
+               else
+               {
+                  kernels.axpy(change, dests, 0, partials, w, dests.length);
+               }
+            }
+            else
+            {
+               for (int dest = 0; dest < dests.length; dest++)
+               {
+                  omega += (double) dests[dest] * weights[w];
+                  if (applyNow)
+                  {
+                     partials[w] = change * dests[dest];
+                     weights[w] += partials[w];
+                  }
+                  else
+                  {
+                     partials[w] += change * dests[dest];
+                  }
+                  w += dStride;
+               }
+            }
+            if (n > 0)
+            {
+               psi[n - 1][source] = (float) (omega * perceptron.fPrime(activation));
+            }
+         } // for (int source = 0; source < activations[n].length; source++)
+         if (times != null)
+         {
+            mark = times.backward(n, mark);
+         }
+      }    // for (n = activations.length - 2; n >= 0; n--)
+   }
+}
@@ -0,0 +1,130 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The ImageDecoder interface is what every image format is read through, so that DibDump and BitmapPipeline need not know
+ * which format a file is in. Each decoder reads a whole file held in a ByteBuffer into a Bitmap of true color pels, which is
+ * then centered and converted to activations as DibDump converts it. The decoders keep no state, so any number of threads may
+ * use one at once. There are three:
+ * - BMP, BmpCodec, Windows bitmaps of every depth, uncompressed, with bit field masks, or run length encoded.
+ * - PNM, PnmDecoder, the netpbm graymaps (PGM) and pixmaps (PPM), in text or binary.
+ * - RAW, RawDecoder, raw 8-bit grayscale dumps of a square image, which have no header at all.
+ * More may be added without changing this file through java.util.ServiceLoader, by naming their classes in a
+ * META-INF/services/src.ImageDecoder file on the class path. forFile picks a decoder by the file's contents where the format has
+ * a signature, and by the name's extension otherwise.
+ */
+public interface ImageDecoder
+{
+   ImageDecoder BMP = new BmpCodec();
+   ImageDecoder PNM = new PnmDecoder();
+   ImageDecoder RAW = new RawDecoder(0);
+
+   /**
+    * Method extensions lists the file name extensions of the format, each starting with a dot, in lower case.
+    *
+    * @return The extensions.
+    */
+   String[] extensions();
+
+   /**
+    * Method accepts tells whether a file is in the decoder's format, by its signature or, for formats without one, its name.
+    *
+    * @param name The name of the file.
+    * @param file The contents of the file. Its position is not changed.
+    * @return True if the decoder can read the file.
+    */
+   boolean accepts(String name, ByteBuffer file);
+
+   /**
+    * Method decode reads an image into a bitmap of true color pels.
+    *
+    * @param file The contents of the file, from its position on. Its position is not changed.
+    * @param reuse A bitmap to decode into if it has the image's size, so that decoding many images of one size allocates no
+    *              pels, or null.
+    * @return The decoded image, which is reuse when it fit.
+    */
+   Bitmap decode(ByteBuffer file, Bitmap reuse);
+
+   /**
+    * Method decoders lists every decoder: the three of this interface, and then any found by ServiceLoader.
+    *
+    * @return The decoders.
+    */
+   static List<ImageDecoder> decoders()
+   {
+      List<ImageDecoder> decoders = new ArrayList<>(List.of(BMP, PNM, RAW));
+      for (ImageDecoder decoder : ServiceLoader.load(ImageDecoder.class))
+      {
+         decoders.add(decoder);
+      }
+      return decoders;
+   }
+
+   /**
+    * Method forFile picks the decoder for a file. Decoders that know the file by its signature come before those that only
+    * know its name, so a file is never read as raw pels when its contents say what it is.
+    *
+    * @param decoders The decoders to choose from, as decoders lists them.
+    * @param name The name of the file.
+    * @param file The contents of the file.
+    * @return The decoder.
+    */
+   static ImageDecoder forFile(List<ImageDecoder> decoders, String name, ByteBuffer file)
+   {
+      for (ImageDecoder decoder : decoders)
+      {
+         if (decoder != RAW && decoder.accepts(name, file))
+         {
+            return decoder;
+         }
+      }
+      if (RAW.accepts(name, file))
+      {
+         return RAW;
+      }
+      throw new IllegalArgumentException("File " + name + " is not in a known image format, terminating.");
+   }
+
+   /**
+    * Method isImage tells whether a file name has the extension of one of the decoders.
+    *
+    * @param decoders The decoders, as decoders lists them.
+    * @param name The name of the file.
+    * @return True if one of the decoders claims the extension.
+    */
+   static boolean isImage(List<ImageDecoder> decoders, String name)
+   {
+      String lower = name.toLowerCase();
+      for (ImageDecoder decoder : decoders)
+      {
+         for (String extension : decoder.extensions())
+         {
+            if (lower.endsWith(extension))
+            {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Method read decodes an image file of any known format.
+    *
+    * @param path The image file.
+    * @return The decoded image.
+    * @throws IOException If the file cannot be read.
+    */
+   static Bitmap read(Path path) throws IOException
+   {
+      ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+      return forFile(decoders(), path.getFileName().toString(), file).decode(file, null);
+   }
+}
@@ -0,0 +1,322 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The InferenceServer class loads trained weights from a checkpoint file (see Checkpoint) once and then answers requests for
+ * the network's outputs, without training. Requests can come from any number of threads at once. They are put on a queue, and a
+ * single batching thread takes every request waiting on the queue, up to MAX_BATCH of them, and runs them through the network
+ * as one batch. Each batch slot has its own Workspace, so the perceptron's own activations are never used.
+ *
+ * The protocol is one request per line, the input activations separated by whitespace like a line of the trial cases file.
+ * Each request is answered by one line, either the output activations separated by single spaces or "error" followed by the
+ * reason the request could not be run. Answers on a connection are in the same order as its requests.
+ *
+ * Usage: java src.InferenceServer checkpointFile [port] [activation] [address]
+ * Without a port, the requests are read from System.in and the answers written to System.out. With a port, the server accepts
+ * any number of connections on it, on the loopback address unless another address to listen on is given, since the requests
+ * are not authenticated. The activation function is the one saved in the checkpoint. An activation given as well must match
+ * it, and is only needed for version 1 checkpoints, which do not save one (sigmoid by default).
+ */
+public class InferenceServer
+{
+   static final int MAX_BATCH = 64;              // The largest number of requests run through the network together.
+
+   Perceptron perceptron;
+   BlockingQueue<Request> queue;                 // Requests waiting for the batching thread.
+   Workspace[] workspaces;                       // One workspace per batch slot, only used by the batching thread.
+   double[][] batchInputs;                       // The inputs of the current batch.
+   List<Request> batch;                          // The requests of the current batch.
+
+   /**
+    * A single request and the place its answer goes.
+    */
+   static final class Request
+   {
+      final double[] inputs;
+      final CompletableFuture<double[]> outputs = new CompletableFuture<>();
+
+      Request(double[] inputs)
+      {
+         this.inputs = inputs;
+      }
+   }
+
+   /**
+    * Creates a server for the given perceptron and starts its batching thread. The perceptron's weights must not change while
+    * the server is in use.
+    *
+    * @param perceptron The trained perceptron.
+    */
+   public InferenceServer(Perceptron perceptron)
+   {
+      this.perceptron = perceptron;
+      queue = new LinkedBlockingQueue<>();
+      workspaces = new Workspace[MAX_BATCH];
+      for (int i = 0; i < MAX_BATCH; i++)
+      {
+         workspaces[i] = new Workspace(perceptron, false);
+      }
+      batchInputs = new double[MAX_BATCH][];
+      batch = new ArrayList<>(MAX_BATCH);
+
+      Thread batcher = new Thread(this::runBatches, "Inference batcher");
+      batcher.setDaemon(true);
+      batcher.start();
+   }
+
+   /**
+    * Starts the server on System.in and System.out, or on a port.
+    *
+    * @param args The checkpoint file, then optionally the port, the name of the activation function and the address to
+    *             listen on.
+    * @throws IOException If the checkpoint cannot be read or the port cannot be opened.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      Checkpoint checkpoint;
+      try
+      {
+         checkpoint = Checkpoint.load(args[0]);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalArgumentException("Checkpoint File " + e.toString() + " not accepted, terminating.");
+      }
+      Perceptron perceptron = checkpoint.createPerceptron();
+      if (args.length > 2)
+      {
+         ActivationFunction function = ActivationFunction.forName(args[2]);
+         checkpoint.checkActivation(function);
+         perceptron.activationFunction = function;
+      }
+      InferenceServer server = new InferenceServer(perceptron);
+
+      if (args.length < 2)
+      {
+         server.serve(System.in, System.out);
+         return;
+      }
+      InetAddress address = args.length > 3 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+      try (ServerSocket serverSocket = new ServerSocket(Integer.parseInt(args[1]), 0, address))
+      {
+         System.err.println("Serving " + args[0] + " on " + address.getHostAddress() + " port " + serverSocket.getLocalPort());
+         while (true)
+         {
+            Socket socket = serverSocket.accept();
+            Thread connection = new Thread(() ->
+            {
+               try (Socket s = socket)
+               {
+                  server.serve(s.getInputStream(), s.getOutputStream());
+               }
+               catch (IOException e)
+               {
+                  System.err.println("Connection closed: " + e);
+               }
+            }, "Inference connection");
+            connection.setDaemon(true);
+            connection.start();
+         }
+      }
+   }
+
+   /**
+    * Method submit queues a request to be run in the next batch.
+    *
+    * @param inputs The input activations, one per input node.
+    * @return The future output activations, which fails with an IllegalArgumentException if there are too few or too many inputs.
+    */
+   public CompletableFuture<double[]> submit(double[] inputs)
+   {
+      Request request = new Request(inputs);
+      if (inputs.length != perceptron.inputNodes)
+      {
+         request.outputs.completeExceptionally(new IllegalArgumentException("Expected " + perceptron.inputNodes + " inputs, got "
+               + inputs.length));
+      }
+      else
+      {
+         queue.add(request);
+      }
+      return request.outputs;
+   }
+
+   /**
+    * Method predict runs a single request and waits for its answer.
+    *
+    * @param inputs The input activations, one per input node.
+    * @return The output activations.
+    */
+   public double[] predict(double[] inputs)
+   {
+      try
+      {
+         return submit(inputs).get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while waiting for a prediction, terminating.");
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalArgumentException(e.getCause().getMessage());
+      }
+   }
+
+   /**
+    * Method runBatches is the batching thread. It waits for a request, takes every other request already waiting up to
+    * MAX_BATCH in total, and runs them together, so batches grow on their own when requests arrive faster than they are run.
+    */
+   void runBatches()
+   {
+      while (true)
+      {
+         try
+         {
+            batch.add(queue.take());
+         }
+         catch (InterruptedException e)
+         {
+            return;
+         }
+         queue.drainTo(batch, MAX_BATCH - 1);
+
+         int count = batch.size();
+         for (int i = 0; i < count; i++)
+         {
+            batchInputs[i] = batch.get(i).inputs;
+         }
+         try
+         {
+            perceptron.runNetwork(batchInputs, 0, count, workspaces);
+            for (int i = 0; i < count; i++)
+            {
+               batch.get(i).outputs.complete(workspaces[i].outputs().clone());
+            }
+         }
+         catch (RuntimeException e)
+         {
+            for (int i = 0; i < count; i++)
+            {
+               batch.get(i).outputs.completeExceptionally(e);
+            }
+         }
+         batch.clear();
+      }  // while (true)
+   }
+
+   /**
+    * Method serve answers the requests read from a stream until it ends. The requests are read and queued on the calling thread
+    * without waiting for their answers, so a client that sends many lines at once has them batched together. A second thread
+    * writes the answers in order as they complete.
+    *
+    * @param in The stream of requests.
+    * @param out The stream that the answers are written to.
+    * @throws IOException If the requests cannot be read.
+    */
+   void serve(InputStream in, OutputStream out) throws IOException
+   {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+      PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+      BlockingQueue<CompletableFuture<double[]>> answers = new LinkedBlockingQueue<>();
+      CompletableFuture<double[]> end = new CompletableFuture<>();          // Marks the end of the requests.
+
+      Thread answerWriter = new Thread(() -> writeAnswers(answers, end, writer), "Inference answers");
+      answerWriter.setDaemon(true);
+      answerWriter.start();
+
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+         StringTokenizer tokens = new StringTokenizer(line);
+         if (!tokens.hasMoreTokens())
+         {
+            continue;
+         }
+         double[] inputs = new double[tokens.countTokens()];
+         try
+         {
+            for (int i = 0; i < inputs.length; i++)
+            {
+               inputs[i] = Double.parseDouble(tokens.nextToken());
+            }
+            answers.add(submit(inputs));
+         }
+         catch (NumberFormatException e)
+         {
+            answers.add(CompletableFuture.failedFuture(e));
+         }
+      }  // while ((line = reader.readLine()) != null)
+
+      answers.add(end);
+      try
+      {
+         answerWriter.join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Method writeAnswers writes each answer once it is ready, in the order of the requests, flushing whenever no further answer
+    * is ready so that a waiting client is never kept waiting.
+    *
+    * @param answers The answers in request order.
+    * @param end The marker put on the queue after the last answer.
+    * @param writer The writer for the answers.
+    */
+   static void writeAnswers(BlockingQueue<CompletableFuture<double[]>> answers, CompletableFuture<double[]> end, PrintWriter writer)
+   {
+      try
+      {
+         CompletableFuture<double[]> answer;
+         while ((answer = answers.take()) != end)
+         {
+            try
+            {
+               double[] outputs = answer.get();
+               StringBuilder sb = new StringBuilder();
+               for (int i = 0; i < outputs.length; i++)
+               {
+                  sb.append(i == 0 ? "" : " ").append(outputs[i]);
+               }
+               writer.println(sb);
+            }
+            catch (ExecutionException e)
+            {
+               writer.println("error " + e.getCause().getMessage());
+            }
+            if (answers.isEmpty() || !answers.peek().isDone())
+            {
+               writer.flush();
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      writer.flush();
+   }
+}
@@ -0,0 +1,241 @@
+package src;
+
+/**
+ * The Kernels interface holds the inner loops of the Perceptron that run along a contiguous row of the weights buffer. There are
+ * two implementations:
+ * - SCALAR, plain Java loops that work on every JVM.
+ * - VectorKernels, which uses the incubating JDK Vector API (jdk.incubator.vector) to work on several doubles per instruction.
+ *   It can only be used when the JVM is started with --add-modules jdk.incubator.vector.
+ *
+ * axpy and update do the same arithmetic, in the same order, in both implementations, so their results are identical. dot adds
+ * its products in a different order when vectorized, so its results may differ in the last bits.
+ *
+ * Each kernel also has a form for float storage (see FloatPerceptron). Sums that run over a whole layer, the forward
+ * accumulation and the dot products, are kept in double. The weight changes are done entirely in float.
+ *
+ * The functions available through forName are "scalar", "vector", and "auto", which picks vector whenever it is available.
+ */
+public interface Kernels
+{
+   Kernels SCALAR = new Scalar();
+   String VECTOR_MODULE = "jdk.incubator.vector";
+   String VECTOR_CLASS = "src.VectorKernels";
+
+   /**
+    * Method axpy adds a multiple of one row to another, y[i] += a * x[i].
+    *
+    * @param a The multiple.
+    * @param x The row being added.
+    * @param xOffset The index of the first element of x.
+    * @param y The row being added to.
+    * @param yOffset The index of the first element of y.
+    * @param length The number of elements.
+    */
+   void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+   /**
+    * Method dot finds the dot product of two rows.
+    *
+    * @param x The first row.
+    * @param xOffset The index of the first element of x.
+    * @param y The second row.
+    * @param yOffset The index of the first element of y.
+    * @param length The number of elements.
+    * @return The sum of x[i] * y[i].
+    */
+   double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+   /**
+    * Method update sets a row of partials to a multiple of x and adds them to the matching row of weights, which is the weight
+    * change of online back propagation: partials[i] = a * x[i], then weights[i] += partials[i].
+    *
+    * @param a The multiple, lambda times the source activation.
+    * @param x The row of psi values of the destination layer, starting at its first element.
+    * @param partials The partials buffer.
+    * @param weights The weights buffer.
+    * @param offset The index of the first weight in the row.
+    * @param length The number of elements.
+    */
+   void update(double a, double[] x, double[] partials, double[] weights, int offset, int length);
+
+   /**
+    * Method axpy adds a multiple of a row of floats to a row of doubles, y[i] += a * x[i], in double.
+    *
+    * @param a The multiple.
+    * @param x The row being added.
+    * @param xOffset The index of the first element of x.
+    * @param y The row being added to.
+    * @param yOffset The index of the first element of y.
+    * @param length The number of elements.
+    */
+   void axpy(double a, float[] x, int xOffset, double[] y, int yOffset, int length);
+
+   /**
+    * Method axpy adds a multiple of a row of floats to another row of floats, y[i] += a * x[i], in float.
+    *
+    * @param a The multiple.
+    * @param x The row being added.
+    * @param xOffset The index of the first element of x.
+    * @param y The row being added to.
+    * @param yOffset The index of the first element of y.
+    * @param length The number of elements.
+    */
+   void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+   /**
+    * Method dot finds the dot product of two rows of floats, adding the products in double.
+    *
+    * @param x The first row.
+    * @param xOffset The index of the first element of x.
+    * @param y The second row.
+    * @param yOffset The index of the first element of y.
+    * @param length The number of elements.
+    * @return The sum of x[i] * y[i].
+    */
+   double dot(float[] x, int xOffset, float[] y, int yOffset, int length);
+
+   /**
+    * Method update is the float form of the online weight change: partials[i] = a * x[i], then weights[i] += partials[i].
+    *
+    * @param a The multiple, lambda times the source activation.
+    * @param x The row of psi values of the destination layer, starting at its first element.
+    * @param partials The partials buffer.
+    * @param weights The weights buffer.
+    * @param offset The index of the first weight in the row.
+    * @param length The number of elements.
+    */
+   void update(float a, float[] x, float[] partials, float[] weights, int offset, int length);
+
+   /**
+    * Method forName finds the kernels with the given name, as used by the kernels setting of the input file.
+    *
+    * @param name "scalar", "vector" or "auto".
+    * @return The matching kernels.
+    */
+   static Kernels forName(String name)
+   {
+      switch (name)
+      {
+         case "scalar":
+            return SCALAR;
+         case "vector":
+            Kernels vector = vector();
+            if (vector == null)
+            {
+               throw new IllegalArgumentException("Vector kernels need --add-modules " + VECTOR_MODULE + ", terminating.");
+            }
+            return vector;
+         case "auto":
+            return best();
+         default:
+            throw new IllegalArgumentException("Kernels " + name + " not accepted, terminating.");
+      }
+   }
+
+   /**
+    * Method best picks the vector kernels if they can be used, and the scalar kernels otherwise.
+    *
+    * @return The kernels.
+    */
+   static Kernels best()
+   {
+      Kernels vector = vector();
+      return vector != null ? vector : SCALAR;
+   }
+
+   /**
+    * Method vector loads the vector kernels by name, so that nothing refers to the Vector API classes unless the module is
+    * present. This is the runtime dispatch: on a JVM without the module this returns null instead of failing to link.
+    *
+    * @return The vector kernels, or null if the Vector API is not available.
+    */
+   static Kernels vector()
+   {
+      if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty())
+      {
+         return null;
+      }
+      try
+      {
+         return (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+      }
+      catch (ReflectiveOperationException | LinkageError e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Plain loops. C2 vectorizes axpy and update on its own on most hardware, but not dot, since that would change the order in
+    * which the products are added.
+    */
+   final class Scalar implements Kernels
+   {
+      public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+      {
+         for (int i = 0; i < length; i++)
+         {
+            y[yOffset + i] += a * x[xOffset + i];
+         }
+      }
+
+      public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+      {
+         double sum = 0.0;
+         for (int i = 0; i < length; i++)
+         {
+            sum += x[xOffset + i] * y[yOffset + i];
+         }
+         return sum;
+      }
+
+      public void update(double a, double[] x, double[] partials, double[] weights, int offset, int length)
+      {
+         for (int i = 0; i < length; i++)
+         {
+            partials[offset + i] = a * x[i];
+            weights[offset + i] += partials[offset + i];
+         }
+      }
+
+      public void axpy(double a, float[] x, int xOffset, double[] y, int yOffset, int length)
+      {
+         for (int i = 0; i < length; i++)
+         {
+            y[yOffset + i] += a * x[xOffset + i];
+         }
+      }
+
+      public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length)
+      {
+         for (int i = 0; i < length; i++)
+         {
+            y[yOffset + i] += a * x[xOffset + i];
+         }
+      }
+
+      public double dot(float[] x, int xOffset, float[] y, int yOffset, int length)
+      {
+         double sum = 0.0;
+         for (int i = 0; i < length; i++)
+         {
+            sum += (double) x[xOffset + i] * y[yOffset + i];
+         }
+         return sum;
+      }
+
+      public void update(float a, float[] x, float[] partials, float[] weights, int offset, int length)
+      {
+         for (int i = 0; i < length; i++)
+         {
+            partials[offset + i] = a * x[i];
+            weights[offset + i] += partials[offset + i];
+         }
+      }
+
+      public String toString()
+      {
+         return "scalar";
+      }
+   }
+}
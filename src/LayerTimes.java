@@ -0,0 +1,65 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LayerTimes class adds up the time spent on each connectivity layer in forward and back propagation. A Perceptron only
+ * times its layers while its layerTimes field is set, so the timing costs nothing but a null check when it is off.
+ *
+ * The totals are atomic, so the worker threads of a multi-threaded Trainer can add into them at once, and the metrics sampler
+ * can read them at any time without stopping training. With several threads the totals are the sum of every thread's time.
+ */
+public class LayerTimes
+{
+   AtomicLongArray forwardNanos;                 // Nanoseconds spent computing each connectivity layer's destinations.
+   AtomicLongArray backwardNanos;                // Nanoseconds spent changing each connectivity layer's weights.
+
+   /**
+    * Creates the totals for a perceptron, all zero.
+    *
+    * @param perceptron The perceptron being timed.
+    */
+   public LayerTimes(Perceptron perceptron)
+   {
+      forwardNanos = new AtomicLongArray(perceptron.numberActivationLayers - 1);
+      backwardNanos = new AtomicLongArray(perceptron.numberActivationLayers - 1);
+   }
+
+   /**
+    * Method layers gives the number of connectivity layers timed.
+    *
+    * @return The number of layers.
+    */
+   public int layers()
+   {
+      return forwardNanos.length();
+   }
+
+   /**
+    * Method forward adds the time since start to a layer's forward propagation total.
+    *
+    * @param n The connectivity layer.
+    * @param start The System.nanoTime at which the layer was started.
+    * @return The current System.nanoTime, which is the start of the next layer.
+    */
+   public long forward(int n, long start)
+   {
+      long now = System.nanoTime();
+      forwardNanos.getAndAdd(n, now - start);
+      return now;
+   }
+
+   /**
+    * Method backward adds the time since start to a layer's back propagation total.
+    *
+    * @param n The connectivity layer.
+    * @param start The System.nanoTime at which the layer was started.
+    * @return The current System.nanoTime, which is the start of the next layer.
+    */
+   public long backward(int n, long start)
+   {
+      long now = System.nanoTime();
+      backwardNanos.getAndAdd(n, now - start);
+      return now;
+   }
+}
@@ -0,0 +1,244 @@
+package src;
+
+/**
+ * The Optimizer interface turns the partials of an update into changes of the weights. The partials are lambda times the
+ * gradient step that back propagation found for each weight, summed over the cases of a batch. Optimizers that remember
+ * earlier updates keep that state in flat arrays laid out exactly like the weights buffer, so an update is one pass over
+ * parallel arrays.
+ *
+ * The optimizers available through forName are:
+ * - sgd, which adds the partials to the weights, the gradient descent of the design documents. The Trainer adapts lambda
+ *   between steps only for this optimizer.
+ * - momentum, which adds a velocity that keeps a fraction mu of the previous velocity: v = mu * v + p, w += v.
+ * - nesterov, Nesterov's accelerated gradient in the form that needs no extra forward pass: v = mu * v + p, w += mu * v + p.
+ * - rmsprop, which divides each weight's step by the root mean square of its recent partials, kept with decay rho.
+ * - adam, which divides the mean of the recent partials (decay beta1) by the root mean square of them (decay beta2), both
+ *   corrected for starting at zero.
+ * The adaptive optimizers, rmsprop and adam, divide lambda back out of the partials, so that their running means are of the
+ * gradient itself and EPSILON is small next to it, and then use lambda as the size of a step whose gradients are all of the
+ * same size. They usually want a far smaller lambda than sgd.
+ */
+public interface Optimizer
+{
+   Optimizer SGD = new Sgd();
+   double EPSILON = 1E-8;                        // Keeps the adaptive optimizers from dividing by zero.
+
+   /**
+    * Method startUpdate is called once before each update, before apply is called on any of the update's ranges of weights.
+    */
+   void startUpdate();
+
+   /**
+    * Method apply changes a range of the weights by the partials and clears those partials. Different ranges of one update
+    * may be applied at once by different threads.
+    *
+    * @param lambda The learning rate.
+    * @param weights The weights buffer.
+    * @param partials The partials buffer, laid out like the weights.
+    * @param first The first weight to change.
+    * @param last One past the last weight to change.
+    */
+   void apply(double lambda, double[] weights, double[] partials, int first, int last);
+
+   /**
+    * Method forName creates the optimizer with the given name, as used by the optimizer setting of the input file.
+    *
+    * @param name The name of the optimizer.
+    * @param decays The decay rates of the optimizer, or an empty array for its defaults.
+    * @param numberWeights The number of weights, for the optimizer's state.
+    * @return The optimizer.
+    */
+   static Optimizer forName(String name, double[] decays, int numberWeights)
+   {
+      switch (name)
+      {
+         case "sgd":
+            return SGD;
+         case "momentum":
+            return new Momentum(decay(decays, 0, Momentum.DEFAULT_MU), false, numberWeights);
+         case "nesterov":
+            return new Momentum(decay(decays, 0, Momentum.DEFAULT_MU), true, numberWeights);
+         case "rmsprop":
+            return new RmsProp(decay(decays, 0, RmsProp.DEFAULT_RHO), numberWeights);
+         case "adam":
+            return new Adam(decay(decays, 0, Adam.DEFAULT_BETA1), decay(decays, 1, Adam.DEFAULT_BETA2), numberWeights);
+         default:
+            throw new IllegalArgumentException("Optimizer " + name + " not accepted, terminating.");
+      }
+   }
+
+   /**
+    * Method decay picks one of the decay rates given to forName, or its default.
+    *
+    * @param decays The decay rates given.
+    * @param index Which decay rate.
+    * @param defaultValue The value when it was not given.
+    * @return The decay rate, which must be in [0, 1).
+    */
+   static double decay(double[] decays, int index, double defaultValue)
+   {
+      double value = index < decays.length ? decays[index] : defaultValue;
+      if (!(value >= 0.0 && value < 1.0))
+      {
+         throw new IllegalArgumentException("Optimizer decay " + value + " not accepted, terminating.");
+      }
+      return value;
+   }
+
+   /**
+    * Plain gradient descent, w += p. It keeps no state, so one instance serves every perceptron.
+    */
+   final class Sgd implements Optimizer
+   {
+      public void startUpdate()
+      {
+      }
+
+      public void apply(double lambda, double[] weights, double[] partials, int first, int last)
+      {
+         for (int w = first; w < last; w++)
+         {
+            weights[w] += partials[w];
+            partials[w] = 0.0;
+         }
+      }
+
+      public String toString()
+      {
+         return "sgd";
+      }
+   }
+
+   /**
+    * Gradient descent with momentum, in the classical or the Nesterov form.
+    */
+   final class Momentum implements Optimizer
+   {
+      static final double DEFAULT_MU = 0.9;
+
+      double mu;
+      boolean nesterov;
+      double[] velocity;
+
+      Momentum(double mu, boolean nesterov, int numberWeights)
+      {
+         this.mu = mu;
+         this.nesterov = nesterov;
+         velocity = new double[numberWeights];
+      }
+
+      public void startUpdate()
+      {
+      }
+
+      public void apply(double lambda, double[] weights, double[] partials, int first, int last)
+      {
+         for (int w = first; w < last; w++)
+         {
+            double v = mu * velocity[w] + partials[w];
+            velocity[w] = v;
+            weights[w] += nesterov ? mu * v + partials[w] : v;
+            partials[w] = 0.0;
+         }
+      }
+
+      public String toString()
+      {
+         return (nesterov ? "nesterov" : "momentum") + " " + mu;
+      }
+   }
+
+   /**
+    * RMSProp, which scales each weight's step by the running root mean square of its partials.
+    */
+   final class RmsProp implements Optimizer
+   {
+      static final double DEFAULT_RHO = 0.9;
+
+      double rho;
+      double[] meanSquare;
+
+      RmsProp(double rho, int numberWeights)
+      {
+         this.rho = rho;
+         meanSquare = new double[numberWeights];
+      }
+
+      public void startUpdate()
+      {
+      }
+
+      public void apply(double lambda, double[] weights, double[] partials, int first, int last)
+      {
+         double perLambda = 1.0 / lambda;
+         for (int w = first; w < last; w++)
+         {
+            double p = partials[w] * perLambda;
+            double s = rho * meanSquare[w] + (1.0 - rho) * p * p;
+            meanSquare[w] = s;
+            weights[w] += lambda * p / (Math.sqrt(s) + EPSILON);
+            partials[w] = 0.0;
+         }
+      }
+
+      public String toString()
+      {
+         return "rmsprop " + rho;
+      }
+   }
+
+   /**
+    * Adam, which scales the running mean of each weight's partials by their running root mean square, both corrected for the
+    * bias toward zero of their first updates.
+    */
+   final class Adam implements Optimizer
+   {
+      static final double DEFAULT_BETA1 = 0.9;
+      static final double DEFAULT_BETA2 = 0.999;
+
+      double beta1;
+      double beta2;
+      double[] mean;
+      double[] meanSquare;
+      double power1;                             // beta1 to the power of the number of updates.
+      double power2;                             // beta2 to the power of the number of updates.
+
+      Adam(double beta1, double beta2, int numberWeights)
+      {
+         this.beta1 = beta1;
+         this.beta2 = beta2;
+         mean = new double[numberWeights];
+         meanSquare = new double[numberWeights];
+         power1 = 1.0;
+         power2 = 1.0;
+      }
+
+      public void startUpdate()
+      {
+         power1 *= beta1;
+         power2 *= beta2;
+      }
+
+      public void apply(double lambda, double[] weights, double[] partials, int first, int last)
+      {
+         double rate = lambda / (1.0 - power1);
+         double squareCorrection = 1.0 / (1.0 - power2);
+         double perLambda = 1.0 / lambda;
+         for (int w = first; w < last; w++)
+         {
+            double p = partials[w] * perLambda;
+            double m = beta1 * mean[w] + (1.0 - beta1) * p;
+            double s = beta2 * meanSquare[w] + (1.0 - beta2) * p * p;
+            mean[w] = m;
+            meanSquare[w] = s;
+            weights[w] += rate * m / (Math.sqrt(s * squareCorrection) + EPSILON);
+            partials[w] = 0.0;
+         }
+      }
+
+      public String toString()
+      {
+         return "adam " + beta1 + " " + beta2;
+      }
+   }
+}
@@ -0,0 +1,75 @@
+package src;
+
+/**
+ * The OptimizerBenchmark class compares the optimizers (see Optimizer) on one training problem. Every optimizer starts from the
+ * same weights and trains until the error falls below the input file's minimum error or the step limit is reached. The report
+ * gives the steps taken, the wall time and the error reached by each.
+ *
+ * Usage: java src.OptimizerBenchmark inputsFile trialCasesFile truthsFile [maxSteps [optimizer[:lambda] ...]]
+ * maxSteps defaults to the input file's maximum number of steps. Without a list of optimizers every optimizer is run with the
+ * input file's lambda, which suits sgd but is usually far too large for rmsprop and adam. Only sgd adapts lambda as it trains.
+ */
+public class OptimizerBenchmark
+{
+   static final String[] ALL_OPTIMIZERS = {"sgd", "momentum", "nesterov", "rmsprop", "adam"};
+
+   /**
+    * Runs the comparison.
+    *
+    * @param args The input, trial cases and truths files, then the optional step limit and list of optimizers.
+    */
+   public static void main(String[] args)
+   {
+      int maxSteps = -1;
+      String[] optimizers = ALL_OPTIMIZERS;
+      if (args.length > 3)
+      {
+         maxSteps = Integer.parseInt(args[3]);
+      }
+      if (args.length > 4)
+      {
+         optimizers = new String[args.length - 4];
+         System.arraycopy(args, 4, optimizers, 0, optimizers.length);
+      }
+
+      double[] startingWeights = null;
+      for (String optimizer : optimizers)
+      {
+         Trainer trainer = new Trainer(args[0], args[1], args[2], null);
+         if (startingWeights == null)
+         {
+            startingWeights = trainer.perceptron.weights.clone();
+         }
+         System.arraycopy(startingWeights, 0, trainer.perceptron.weights, 0, startingWeights.length);
+         int limit = maxSteps < 0 ? trainer.MAX_STEPS : maxSteps;
+
+         String name = optimizer;
+         int colon = optimizer.indexOf(':');
+         if (colon >= 0)
+         {
+            name = optimizer.substring(0, colon);
+            trainer.lambda = Double.parseDouble(optimizer.substring(colon + 1));
+         }
+         if (trainer.singlePrecision && !name.equals("sgd"))
+         {
+            throw new IllegalArgumentException("Float precision trains with the sgd optimizer only, terminating.");
+         }
+         double startingLambda = trainer.lambda;
+         trainer.perceptron.lambda = trainer.lambda;
+         trainer.perceptron.optimizer = Optimizer.forName(name, new double[0], startingWeights.length);
+
+         long startTime = System.nanoTime();
+         int steps = 0;
+         while (trainer.currError > trainer.MINIMUM_ERROR && steps < limit)
+         {
+            trainer.step();
+            steps++;
+         }
+         double seconds = (System.nanoTime() - startTime) / 1E9;
+         System.out.printf("%-9s lambda %-8g %s %d steps in %.2f sec (%.1f steps/sec), error %.9f%n", name, startingLambda,
+               trainer.currError <= trainer.MINIMUM_ERROR ? "reached the minimum error in" : "stopped after",
+               steps, seconds, steps / seconds, trainer.currError);
+         trainer.close();
+      }
+   }
+}
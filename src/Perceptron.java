@@ -1,5 +1,7 @@
 package src;
 
+import java.util.Arrays;
+
 /**
  * @author Mihir Sharma
  * Created on Friday, November 6th (9.6.19)
@@ -13,8 +15,15 @@ package src;
  * Functions in this class include the following:
  * - runNetwork, which uses the inputs and weights to run the Simple Network for an AND logic table.
  * - backProp, which runs the back propagation algorithm to modify the weights of the Perceptron, based on a set of expected outputs.
- * - f, which follows the documentation's notation for the threshold function.
- * - fPrime, which is the derivative of the threshold function.
+ * - accumulatePartials and applyPartials, which split back propagation so that the changes from several cases are applied together.
+ *   applyPartials hands the partials to the perceptron's Optimizer, which is plain gradient descent unless set otherwise.
+ *   runNetwork and accumulatePartials can also use a separate Workspace, so that several threads can share one set of weights.
+ *   runNetwork can also run a batch of cases together as a cache-blocked matrix multiply, each case in its own Workspace.
+ *   The loops along rows of the weights buffer run through the perceptron's Kernels, which may use SIMD instructions.
+ *   Both also add the time spent on each layer into the perceptron's LayerTimes, when it has them.
+ * - f, which follows the documentation's notation for the threshold function, using the perceptron's ActivationFunction.
+ * - fPrime, which is the derivative of the threshold function, found from the activation f already produced.
+ * - weightIndex, getWeight and setWeight, which find and change a single weight inside the flat weights buffer.
  * - randomizeWeights, which uses a lower bound and an upper bound to randomize the Perceptron's weights.
  * - printResult, which provides some information by printing the result and the expected output.
  * - calculateError, which calculates the root of the sum of the squares as shown in the documentation. (Ti - Fi)^2.
@@ -32,6 +41,8 @@ public class Perceptron
                                       // input activations and one for output activations.
 
    double[] expectedOutputs;          // An Array that holds the values for the expected outputs, for comparison with the actual outputs.
+
+   Workspace state;                   // The workspace used by runNetwork and backProp. The fields below are its arrays.
    double[][] activations;            // A 2D Array that represents the different activation layers. First index will be the number of activation
                                       // layers, and the second index will specify which node from the activation layer to use.
 
@@ -41,73 +52,159 @@ public class Perceptron
    double [][] psi;
    double lambda;
 
-   public double[][][] weights;        // A 3D Array that represents the connectivity layers.
+   ActivationFunction activationFunction;  // The threshold function f applied at every node after the input layer.
+   Kernels kernels;                        // The inner loops along rows of the weights, scalar or vectorized.
+   LayerTimes layerTimes;                  // Receives the time spent on each layer, or null to not time the layers.
+   Optimizer optimizer;                    // Turns the partials of each update into weight changes.
+
+   public double[] weights;            // One contiguous buffer holding every connectivity layer, one layer after the other.
+
+   public double[] partials;           // Partials buffer, laid out exactly like the weights buffer.
+
+   WeightLayout layout;                // How each connectivity layer is ordered inside the weights buffer.
+   int[] weightOffsets;                // The index in the weights buffer at which each connectivity layer begins.
+   int[] sourceStride;                 // The distance in the weights buffer between two neighbouring source nodes of a layer.
+   int[] destStride;                   // The distance in the weights buffer between two neighbouring destination nodes of a layer.
 
-   public double[][][] partials;       // Partials 3D Array, may not be necessary, but left in because "you touch it, you break it!"
+   static final int CASE_BLOCK = 16;     // Cases per tile of the batched forward pass.
+   static final int SOURCE_BLOCK = 128;  // Sources per tile of the batched forward pass.
+   static final int DEST_BLOCK = 128;    // Dests per tile, so a tile of weights (128 x 128 doubles, 128KB) stays in the cache.
+
+   /**
+    * WeightLayout specifies how the weights of a single connectivity layer are ordered inside the flat weights buffer.
+    * SOURCE_MAJOR keeps all of the weights leaving a source node next to each other (the old weights[n][source][dest] order),
+    * which suits back propagation. DEST_MAJOR keeps all of the weights entering a destination node next to each other, which
+    * suits the dot products of forward propagation.
+    */
+   public enum WeightLayout
+   {
+      SOURCE_MAJOR,
+      DEST_MAJOR
+   }
 
    /**
     * BPerceptron is the constructor for the neural network. It creates the activation layers and connectivity layers for the
-    * network, as well as the arrays for all of the variables used during back propagation.
+    * network, as well as the arrays for all of the variables used during back propagation. The weights are stored source major.
     *
     * @param inputNodes The number of input activations.
     * @param hiddenLayerNodes An array containing the number of activations in each hidden layer.
     * @param outputNodes The number of output activations.
     */
    public Perceptron(int inputNodes, int[] hiddenLayerNodes, int outputNodes)
+   {
+      this(inputNodes, hiddenLayerNodes, outputNodes, WeightLayout.SOURCE_MAJOR);
+   }
+
+   /**
+    * Creates the neural network with the connectivity layers stored in the given layout.
+    *
+    * @param inputNodes The number of input activations.
+    * @param hiddenLayerNodes An array containing the number of activations in each hidden layer.
+    * @param outputNodes The number of output activations.
+    * @param layout The order of the weights inside each connectivity layer of the weights buffer.
+    */
+   public Perceptron(int inputNodes, int[] hiddenLayerNodes, int outputNodes, WeightLayout layout)
    {
       this.inputNodes = inputNodes;
       this.hiddenLayerNodes = hiddenLayerNodes;
       this.outputNodes = outputNodes;
+      this.layout = layout;
+      this.activationFunction = ActivationFunction.SIGMOID;
+      this.kernels = Kernels.best();
+      this.optimizer = Optimizer.SGD;
       this.numberActivationLayers = NUM_COLUMNS + hiddenLayerNodes.length;  // add 2 to the number of hidden layers for the
                                                                             // total number of layers (1 input + n hidden + 1 output)
       this.expectedOutputs = new double[outputNodes];
-      activations = new double[numberActivationLayers][];   // The indices of the activations array matches the documentation exactly. The first
-                                                            // index represents the current layer, and the second index represents the current node.
-
-      theta = new double[numberActivationLayers - 1][];     // Theta, omega, and psi are not computed for the input layer,
-      omega = new double[numberActivationLayers - 1][];     // so the lengths are one less than the length of activations.
-      psi = new double[numberActivationLayers - 1][];
 
-      activations[0] = new double[inputNodes];
+      weightOffsets = new int[numberActivationLayers - 1];       // Connectivity layer n joins activation layer n (the sources) to
+      sourceStride = new int[numberActivationLayers - 1];        // activation layer n + 1 (the destinations), as specified in the
+      destStride = new int[numberActivationLayers - 1];          // documentation.
 
-      for (int i = 1; i < activations.length - 1; i++)
+      int size = 0;
+      for (int n = 0; n < weightOffsets.length; n++)
       {
-         activations[i] = new double[hiddenLayerNodes[i - 1]];
-         theta[i - 1] = new double[hiddenLayerNodes[i - 1]];
-         omega[i - 1] = new double[hiddenLayerNodes[i - 1]];
-         psi[i - 1] = new double[hiddenLayerNodes[i - 1]];
-      }
-      activations[activations.length - 1] = new double[outputNodes];
-      theta[activations.length - 2] = new double[outputNodes];
-      omega[activations.length - 2] = new double[outputNodes];
-      psi[activations.length - 2] = new double[outputNodes];
-
-
-      weights = new double[numberActivationLayers - 1][][];       // The first index of the connectivity layer represents the current layer,  the
-                                                                  // second index represents the source node, and the third index represents the
-                                                                  // destination node, as specified in the documentation.
-
-      for (int i = 0; i < hiddenLayerNodes.length; i++)
-      {
-         if (i == 0)
+         int sources = layerNodes(n);
+         int dests = layerNodes(n + 1);
+         weightOffsets[n] = size;
+         if (layout == WeightLayout.SOURCE_MAJOR)
          {
-            weights[i] = new double[inputNodes][hiddenLayerNodes[i]];
+            sourceStride[n] = dests;
+            destStride[n] = 1;
          }
          else
          {
-            weights[i] = new double[hiddenLayerNodes[i - 1]][hiddenLayerNodes[i]];
+            sourceStride[n] = 1;
+            destStride[n] = sources;
          }
-      } // for (int i = 0; i < hiddenLayerNodes.length; i++)
-      weights[hiddenLayerNodes.length] = new double[hiddenLayerNodes[hiddenLayerNodes.length - 1]][outputNodes];
-      partials = new double[weights.length][][];
-      for (int m = 0; m < weights.length; m++)
+         size += sources * dests;
+      } // for (int n = 0; n < weightOffsets.length; n++)
+
+      weights = new double[size];
+
+      state = new Workspace(this);                          // The indices of the activations array matches the documentation exactly. The first
+      activations = state.activations;                      // index represents the current layer, and the second index represents the current node.
+      theta = state.theta;
+      omega = state.omega;
+      psi = state.psi;
+      partials = state.partials;
+   }
+
+   /**
+    * Method layerNodes finds the number of nodes in an activation layer.
+    *
+    * @param n The activation layer, where 0 is the input layer.
+    * @return The number of nodes in that layer.
+    */
+   int layerNodes(int n)
+   {
+      if (n == 0)
       {
-         for (int i = 0; i < weights[m].length; i++)
-         {
-            partials[m] = new double[weights[m].length][weights[m][i].length];
-         }
+         return inputNodes;
       }
+      else if (n == numberActivationLayers - 1)
+      {
+         return outputNodes;
+      }
+      return hiddenLayerNodes[n - 1];
+   }
+
+   /**
+    * Method weightIndex finds where a single weight lives inside the weights and partials buffers.
+    *
+    * @param n The connectivity layer.
+    * @param source The source node, in activation layer n.
+    * @param dest The destination node, in activation layer n + 1.
+    * @return The index of the weight in the flat buffers.
+    */
+   public int weightIndex(int n, int source, int dest)
+   {
+      return weightOffsets[n] + source * sourceStride[n] + dest * destStride[n];
+   }
+
+   /**
+    * Method getWeight returns the weight between two nodes, matching the documentation's w[n][source][dest] notation.
+    *
+    * @param n The connectivity layer.
+    * @param source The source node, in activation layer n.
+    * @param dest The destination node, in activation layer n + 1.
+    * @return The value of the weight.
+    */
+   public double getWeight(int n, int source, int dest)
+   {
+      return weights[weightIndex(n, source, dest)];
+   }
 
+   /**
+    * Method setWeight changes the weight between two nodes.
+    *
+    * @param n The connectivity layer.
+    * @param source The source node, in activation layer n.
+    * @param dest The destination node, in activation layer n + 1.
+    * @param value The new value of the weight.
+    */
+   public void setWeight(int n, int source, int dest, double value)
+   {
+      weights[weightIndex(n, source, dest)] = value;
    }
 
    /**
@@ -121,98 +218,379 @@ public class Perceptron
     */
    public void runNetwork(double[] inputs)
    {
+      runNetwork(inputs, state);
+   }
+
+   /**
+    * Runs the network for one case using the activations of the given workspace instead of the perceptron's own. The weights are
+    * only read, so several threads may do this at once with different workspaces.
+    *
+    * @param inputs A double array of the input activations for the network that is to be run.
+    * @param workspace The workspace that receives the activations and theta values of this case.
+    */
+   public void runNetwork(double[] inputs, Workspace workspace)
+   {
+      double[][] activations = workspace.activations;
+      double[][] theta = workspace.theta;
+
       // Set inputs
       for (int source = 0; source < inputs.length; source++)
       {
          activations[0][source] = inputs[source];        // Read inputs & modify input activations, the 0 is hardcoded for the input activation layer.
       }
+      LayerTimes times = layerTimes;
+      long mark = times == null ? 0L : System.nanoTime();
       // Forward propagation
       for (int n = 1; n < activations.length; n++)
       {
-         for (int dest = 0; dest < activations[n].length; dest++)
+         double[] sources = activations[n - 1];
+         double[] sums = theta[n - 1];
+         int offset = weightOffsets[n - 1];
+         int sStride = sourceStride[n - 1];
+         int dStride = destStride[n - 1];
+
+         if (dStride == 1)                                // Source major: add up each source's row of weights, scaled.
+         {
+            Arrays.fill(sums, 0.0);
+            for (int source = 0; source < sources.length; source++)
+            {
+               kernels.axpy(sources[source], weights, offset + source * sStride, sums, 0, sums.length);
+            }
+         }
+         else                                             // Dest major: each dest's row of weights dotted with the sources.
          {
-            double sumActivations = 0.0;
-            for (int source = 0; source < activations[n - 1].length; source++)
+            for (int dest = 0; dest < sums.length; dest++)
             {
-               sumActivations += activations[n - 1][source] * weights[n - 1][source][dest];
-            }                                            // We can save theta_i before we take the derivative to calculate h_j.
-            theta[n - 1][dest] = sumActivations;         // Calculate theta_i and h_j during forward propagation.
-            activations[n][dest] = f(sumActivations);
-         }  // for (int dest = 0; dest < activations[n].length; dest++)
+               sums[dest] = kernels.dot(sources, 0, weights, offset + dest * dStride, sources.length);
+            }
+         }
+         for (int dest = 0; dest < activations[n].length; dest++)
+         {                                                // We can save theta_i before we take the derivative to calculate h_j.
+            activations[n][dest] = f(sums[dest]);         // Calculate theta_i and h_j during forward propagation.
+         }
+         if (times != null)
+         {
+            mark = times.forward(n - 1, mark);
+         }
       }     // for (int n = 1; n < activations.length; n++)
    }
 
+   /**
+    * Runs the network for several cases at once. Each connectivity layer is computed as a matrix multiply of the cases' source
+    * activations (cases x sources) by the layer's weights (sources x dests), blocked into tiles of CASE_BLOCK cases,
+    * SOURCE_BLOCK sources and DEST_BLOCK dests (see multiplyLayer), so each tile of weights is reused by every case of the tile
+    * while it is in the cache instead of being fetched again for each case.
+    * Each case uses its own workspace. Every theta is still summed over its sources in ascending order starting from 0, so the
+    * results are exactly those of running the cases one at a time. The weights are only read, as in runNetwork.
+    *
+    * @param inputs The input activations of each case.
+    * @param first The index of the first case to run.
+    * @param last One past the index of the last case to run.
+    * @param workspaces The workspaces receiving the activations and theta values of each case, indexed like the inputs.
+    */
+   public void runNetwork(double[][] inputs, int first, int last, Workspace[] workspaces)
+   {
+      for (int c = first; c < last; c++)
+      {
+         System.arraycopy(inputs[c], 0, workspaces[c].activations[0], 0, inputNodes);
+      }
+      LayerTimes times = layerTimes;
+      long mark = times == null ? 0L : System.nanoTime();
+      for (int n = 1; n < numberActivationLayers; n++)
+      {
+         for (int firstCase = first; firstCase < last; firstCase += CASE_BLOCK)
+         {
+            int lastCase = Math.min(last, firstCase + CASE_BLOCK);
+            multiplyLayer(n, firstCase, lastCase, workspaces);
+            for (int c = firstCase; c < lastCase; c++)
+            {
+               double[] dests = workspaces[c].activations[n];
+               double[] theta = workspaces[c].theta[n - 1];
+               for (int dest = 0; dest < dests.length; dest++)
+               {
+                  dests[dest] = f(theta[dest]);
+               }
+            }
+         }  // for (int firstCase = first; firstCase < last; firstCase += CASE_BLOCK)
+         if (times != null)
+         {
+            mark = times.forward(n - 1, mark);
+         }
+      }     // for (int n = 1; n < numberActivationLayers; n++)
+   }
+
+   /**
+    * Method multiplyLayer finds theta of activation layer n for a tile of cases, one SOURCE_BLOCK x DEST_BLOCK tile of the
+    * layer's weights at a time. Each theta keeps its running sum between source tiles, so its terms are still added in source
+    * order. Source major weights are walked along each source's row of dests, which the JIT can vectorize, and dest major weights
+    * along each dest's row of sources.
+    *
+    * @param n The activation layer being computed, at least 1.
+    * @param firstCase The first case of the tile.
+    * @param lastCase One past the last case of the tile.
+    * @param workspaces The workspaces of the cases.
+    */
+   void multiplyLayer(int n, int firstCase, int lastCase, Workspace[] workspaces)
+   {
+      int numberSources = layerNodes(n - 1);
+      int numberDests = layerNodes(n);
+      int offset = weightOffsets[n - 1];
+      int sStride = sourceStride[n - 1];
+      int dStride = destStride[n - 1];
+
+      for (int c = firstCase; c < lastCase; c++)
+      {
+         Arrays.fill(workspaces[c].theta[n - 1], 0.0);
+      }
+      for (int firstDest = 0; firstDest < numberDests; firstDest += DEST_BLOCK)
+      {
+         int lastDest = Math.min(numberDests, firstDest + DEST_BLOCK);
+         for (int firstSource = 0; firstSource < numberSources; firstSource += SOURCE_BLOCK)
+         {
+            int lastSource = Math.min(numberSources, firstSource + SOURCE_BLOCK);
+            for (int c = firstCase; c < lastCase; c++)
+            {
+               double[] sources = workspaces[c].activations[n - 1];
+               double[] theta = workspaces[c].theta[n - 1];
+               if (dStride == 1)
+               {
+                  for (int source = firstSource; source < lastSource; source++)
+                  {
+                     int w = offset + source * sStride;          // Index of weights[n - 1][source][0].
+                     kernels.axpy(sources[source], weights, w + firstDest, theta, firstDest, lastDest - firstDest);
+                  }
+               }
+               else
+               {
+                  for (int dest = firstDest; dest < lastDest; dest++)
+                  {
+                     double sumActivations = theta[dest];
+                     int w = offset + dest * dStride + firstSource * sStride;
+                     for (int source = firstSource; source < lastSource; source++)
+                     {
+                        sumActivations += sources[source] * weights[w];
+                        w += sStride;
+                     }
+                     theta[dest] = sumActivations;
+                  }
+               }
+            }  // for (int c = firstCase; c < lastCase; c++)
+         }     // for (int firstSource = 0; firstSource < numberSources; firstSource += SOURCE_BLOCK)
+      }        // for (int firstDest = 0; firstDest < numberDests; firstDest += DEST_BLOCK)
+   }
 
    /**
     * Method backProp follows the documentation to use back propagation to modify the perceptron's weights based upon a set of expected outputs.
     * There are three cases: the output layer, the hidden layers, and the input layer.
     * For the output layer, formulae are slightly different (no loops).
     * For the input layer, only partials and weights need to be calculated.
+    * Each weight is changed as soon as its partial is found, so this is the online (one case per update) form of training.
+    * Any optimizer other than plain gradient descent needs every partial before it changes the weights, so its partials are
+    * accumulated and then applied, which gives the same partials since omega never sees this case's changes.
     *
     * @param truth The set of expected outputs.
     */
    public void backProp(double[] truth)
    {
+      if (optimizer == Optimizer.SGD)
+      {
+         propagate(truth, state, true);
+      }
+      else
+      {
+         propagate(truth, state, false);
+         applyPartials();
+      }
+   }
+
+   /**
+    * Method accumulatePartials runs back propagation for the current case like backProp, but adds each weight's change into the
+    * partials buffer instead of applying it. The weights are left untouched until applyPartials is called, which lets several
+    * cases be combined into a single update. The partials must be zero before the first case of a batch, which applyPartials
+    * guarantees.
+    *
+    * @param truth The set of expected outputs.
+    */
+   public void accumulatePartials(double[] truth)
+   {
+      propagate(truth, state, false);
+   }
+
+   /**
+    * Accumulates the partials of the case last run in the given workspace into that workspace's own partials buffer. The weights
+    * are only read, so several threads may do this at once with different workspaces.
+    *
+    * @param truth The set of expected outputs.
+    * @param workspace The workspace holding the case's activations, which also receives the partials.
+    */
+   public void accumulatePartials(double[] truth, Workspace workspace)
+   {
+      propagate(truth, workspace, false);
+   }
+
+   /**
+    * Method applyPartials changes the weights by the accumulated partials through the optimizer, then clears the partials for
+    * the next batch.
+    */
+   public void applyPartials()
+   {
+      optimizer.startUpdate();
+      optimizer.apply(lambda, weights, partials, 0, weights.length);
+   }
+
+   /**
+    * Method propagate is shared by backProp and accumulatePartials. Omega always uses the weights from before this case's
+    * changes, so applying the changes immediately or later only differs in when the weights are written.
+    *
+    * @param truth The set of expected outputs.
+    * @param workspace The workspace holding the case's activations and partials.
+    * @param applyNow True to change each weight immediately, false to add the change into the partials buffer.
+    */
+   private void propagate(double[] truth, Workspace workspace, boolean applyNow)
+   {
+      double[][] activations = workspace.activations;
+      double[][] theta = workspace.theta;
+      double[][] omega = workspace.omega;
+      double[][] psi = workspace.psi;
+      double[] partials = workspace.partials;
+      LayerTimes times = layerTimes;
+      long mark = times == null ? 0L : System.nanoTime();              // The output layer's psi counts toward the last layer.
+
       int n = activations.length - 1;
       
       for (int source = 0; source < activations[n].length; source++) // OUTPUT LAYER
       {
          omega[n - 1][source] = truth[source] - activations[n][source];
-         psi[n - 1][source] = omega[n - 1][source] * fPrime(theta[n - 1][source]);
+         psi[n - 1][source] = omega[n - 1][source] * fPrime(activations[n][source]);
       }
 
       for (n = activations.length - 2; n > 0; n--) // HIDDEN LAYERS
       {
+         double[] dests = psi[n];
+         int offset = weightOffsets[n];
+         int sStride = sourceStride[n];
+         int dStride = destStride[n];
+
          for (int source = 0; source < activations[n].length; source++)
          {
-            omega[n - 1][source] = 0;
-            for (int dest = 0; dest < activations[n + 1].length; dest++) // index "I" in our 3-layer network
+            double activation = activations[n][source];
+            double omegaSum = 0.0;
+            int w = offset + source * sStride;           // Index of weights[n][source][0].
+            if (dStride == 1)                            // The source's weights are one row, so the kernels can be used.
+            {
+               omegaSum = kernels.dot(dests, 0, weights, w, dests.length);   // Before the update, like the loop below.
+               updateRow(lambda * activation, dests, partials, w, applyNow);
+            }
+            else
             {
-               omega[n - 1][source] += psi[n][dest] * weights[n][source][dest];
-               partials[n][source][dest] = lambda * activations[n][source] * psi[n][dest];
-               weights[n][source][dest] += partials[n][source][dest];
+               for (int dest = 0; dest < dests.length; dest++) // index "I" in our 3-layer network
+               {
+                  omegaSum += dests[dest] * weights[w];
+                  if (applyNow)
+                  {
+                     partials[w] = lambda * activation * dests[dest];
+                     weights[w] += partials[w];
+                  }
+                  else
+                  {
+                     partials[w] += lambda * activation * dests[dest];
+                  }
+                  w += dStride;
+               }
             }
-            psi[n - 1][source] = omega[n - 1][source] * fPrime(theta[n - 1][source]);
+            omega[n - 1][source] = omegaSum;
+            psi[n - 1][source] = omega[n - 1][source] * fPrime(activation);
          } // for (int source = 0; source < activations[n].length; source++)
+         if (times != null)
+         {
+            mark = times.backward(n, mark);
+         }
       }    // for (n = activations.length - 2; n > 0; n--)
      
       n = 0;
-     
+
+      double[] dests = psi[n];
+      int offset = weightOffsets[n];
+      int sStride = sourceStride[n];
+      int dStride = destStride[n];
+
       for (int source = 0; source < activations[n].length; source++) // INPUT LAYER
       {
-         for (int dest = 0; dest < activations[n + 1].length; dest++) // index "I" in our 3-layer network
+         double activation = activations[n][source];
+         int w = offset + source * sStride;
+         if (dStride == 1)
          {
-            partials[n][source][dest] = lambda * activations[n][source] * psi[n][dest];
-            weights[n][source][dest] += partials[n][source][dest];
+            updateRow(lambda * activation, dests, partials, w, applyNow);
          }
+         else
+         {
+            for (int dest = 0; dest < dests.length; dest++) // index "I" in our 3-layer network
+            {
+               if (applyNow)
+               {
+                  partials[w] = lambda * activation * dests[dest];
+                  weights[w] += partials[w];
+               }
+               else
+               {
+                  partials[w] += lambda * activation * dests[dest];
+               }
+               w += dStride;
+            }
+         }
+      }
+      if (times != null)
+      {
+         times.backward(n, mark);
+      }
+   }
+
+   /**
+    * Method updateRow makes the weight changes for one source node whose weights are a single row, the rank-1 update
+    * lambda * activation * psi. It does exactly the arithmetic of the strided loops in propagate, through the kernels.
+    *
+    * @param change Lambda times the source's activation.
+    * @param dests The psi values of the destination layer.
+    * @param partials The partials buffer to write or add the changes into.
+    * @param w The index of the source's first weight.
+    * @param applyNow True to change the weights now, false to only add the changes into the partials.
+    */
+   private void updateRow(double change, double[] dests, double[] partials, int w, boolean applyNow)
+   {
+      if (applyNow)
+      {
+         kernels.update(change, dests, partials, weights, w, dests.length);
+      }
+      else
+      {
+         kernels.axpy(change, dests, 0, partials, w, dests.length);
       }
    }
 
 
    /**
-    * Method thresholdFunction limits the output of the dot product in the runNetwork method. Currently, it limits the
-    * dot product with a sigmoid function.
+    * Method thresholdFunction limits the output of the dot product in the runNetwork method, using the perceptron's activation
+    * function. By default this is the sigmoid function.
     *
     * @param x The dotProductsResult parameter is the output of the dot product between the two vectors, as
     *                         explained in the documentation for runNetwork. It will be limited by the threshold function.
-    * @return The threshold function will return the limited dot product result. Currently, the function returns exactly what it
-    * is given, and simply serves as a placeholder for future updates.
+    * @return The threshold function will return the limited dot product result.
     */
    double f(double x)
    {
-      return 1.0 / (1.0 + Math.exp(-x));
+      return activationFunction.f(x);
    }
 
    /**
-    * Method fDeriv finds the derivative of the threshold function.
+    * Method fDeriv finds the derivative of the threshold function. It is found from the activation that the threshold function
+    * already produced for the node during runNetwork, rather than by running the threshold function again on theta.
     *
-    * @param x The result of the dot product
-    * @return a double value of the derivative of the threshold function at the input.
+    * @param fx The activation of the node, f(theta).
+    * @return a double value of the derivative of the threshold function at the node.
     */
-   double fPrime(double x)
+   double fPrime(double fx)
    {
-      double thresholdOutput = f(x);
-      return  thresholdOutput * (1.0 - thresholdOutput);
+      return activationFunction.fPrime(fx);
    }
 
    /**
@@ -225,13 +603,7 @@ public class Perceptron
    {
       for (int i = 0; i < weights.length; i++)
       {
-         for (int j = 0; j < weights[i].length; j++)
-         {
-            for (int k = 0; k < weights[i][j].length; k++)
-            {
-               weights[i][j][k] = randomFunction(lowValue, highValue);
-            }
-         }
+         weights[i] = randomFunction(lowValue, highValue);
       }
    }
 
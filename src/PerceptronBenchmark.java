@@ -0,0 +1,94 @@
+package src;
+
+import java.util.Random;
+
+/**
+ * The PerceptronBenchmark class times training steps the same way Trainer.step() takes them, without any of the file parsing or
+ * reporting that Trainer.main() includes in its wall-clock time. Every step runs the network and back propagation once for each
+ * trial case, and the benchmark reports how many steps are completed per second for each weight layout.
+ *
+ * Usage: java src.PerceptronBenchmark [steps] [cases] [inputNodes hiddenNodes... outputNodes]
+ * The defaults are 200 steps of 5 cases on the 625-125-25-1 bitmap configuration.
+ */
+public class PerceptronBenchmark
+{
+   static final int DEFAULT_STEPS = 200;
+   static final int DEFAULT_CASES = 5;
+   static final int[] DEFAULT_CONFIGURATION = {625, 125, 25, 1};
+   static final double LAMBDA = 0.5;
+   static final long SEED = 42L;
+
+   /**
+    * Runs the benchmark for every weight layout, warming each one up with a full run first so that the timed run is compiled.
+    *
+    * @param args The optional number of steps, number of cases, and network configuration.
+    */
+   public static void main(String[] args)
+   {
+      int steps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STEPS;
+      int cases = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CASES;
+      int[] configuration = DEFAULT_CONFIGURATION;
+      if (args.length > 4)
+      {
+         configuration = new int[args.length - 2];
+         for (int i = 0; i < configuration.length; i++)
+         {
+            configuration[i] = Integer.parseInt(args[i + 2]);
+         }
+      }
+
+      int[] hiddenLayerNodes = new int[configuration.length - 2];
+      System.arraycopy(configuration, 1, hiddenLayerNodes, 0, hiddenLayerNodes.length);
+      int inputNodes = configuration[0];
+      int outputNodes = configuration[configuration.length - 1];
+
+      Random random = new Random(SEED);
+      double[][] trialCases = new double[cases][inputNodes];
+      double[][] truths = new double[cases][outputNodes];
+      for (int tc = 0; tc < cases; tc++)
+      {
+         for (int i = 0; i < inputNodes; i++)
+         {
+            trialCases[tc][i] = random.nextDouble();
+         }
+         for (int i = 0; i < outputNodes; i++)
+         {
+            truths[tc][i] = random.nextDouble();
+         }
+      }
+
+      for (Perceptron.WeightLayout layout : Perceptron.WeightLayout.values())
+      {
+         Perceptron perceptron = new Perceptron(inputNodes, hiddenLayerNodes, outputNodes, layout);
+         perceptron.randomizeWeights(-0.01, 0.01);
+         perceptron.lambda = LAMBDA;
+
+         runSteps(perceptron, trialCases, truths, steps);                  // Warm up.
+         long startTime = System.nanoTime();
+         runSteps(perceptron, trialCases, truths, steps);
+         double seconds = (System.nanoTime() - startTime) / 1E9;
+
+         System.out.printf("%-12s %10.2f steps/sec%n", layout, steps / seconds);
+      }
+   }
+
+   /**
+    * Method runSteps takes the given number of training steps, each of which runs every trial case forwards and backwards once.
+    *
+    * @param perceptron The perceptron being trained.
+    * @param trialCases The input activations for each case.
+    * @param truths The expected outputs for each case.
+    * @param steps The number of steps to take.
+    */
+   static void runSteps(Perceptron perceptron, double[][] trialCases, double[][] truths, int steps)
+   {
+      for (int step = 0; step < steps; step++)
+      {
+         for (int tc = 0; tc < trialCases.length; tc++)
+         {
+            perceptron.runNetwork(trialCases[tc]);
+            perceptron.backProp(truths[tc]);
+         }
+      }
+   }
+}
@@ -0,0 +1,231 @@
+package src;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The PnmDecoder class decodes the netpbm graymaps (PGM) and pixmaps (PPM) as the PNM format of ImageDecoder. A file starts
+ * with a header of whitespace-separated text: the signature P2 (text graymap), P3 (text pixmap), P5 (binary graymap) or P6
+ * (binary pixmap), then the width, the height and the largest sample value, maxval, with comments running from # to the end
+ * of a line. The samples follow, one per pel in a graymap and red, green and blue in a pixmap, from the top row down. Text
+ * samples are decimal numbers separated by whitespace. Binary samples start after a single whitespace character and take one
+ * byte each, or two bytes, high byte first, when maxval is above 255. Samples are scaled from 0 to maxval into 0 to 255, and
+ * any above maxval are taken as maxval.
+ */
+public class PnmDecoder implements ImageDecoder
+{
+   static final int MAX_BYTE_SAMPLE = 255;
+   static final int MAX_SAMPLE = 65535;
+
+   /**
+    * The header of a file, and the place reached in its samples.
+    */
+   static class Reader
+   {
+      ByteBuffer in;
+      int p;                                     // The index of the next byte to read.
+      boolean binary;
+      int channels;                              // 1 for a graymap, 3 for a pixmap.
+      int width;
+      int height;
+      int maxValue;
+      int[] scaled;                              // Each byte's sample scaled to 0 to 255, when maxval is at most 255.
+
+      /**
+       * Reads the header of a file.
+       *
+       * @param file The contents of the file, from its position on.
+       */
+      Reader(ByteBuffer file)
+      {
+         in = file.duplicate();
+         p = in.position();
+         if (!isPnm(in))
+         {
+            throw new IllegalArgumentException("File is not a graymap or pixmap, terminating.");
+         }
+         char kind = (char) in.get(p + 1);
+         binary = kind == '5' || kind == '6';
+         channels = kind == '3' || kind == '6' ? 3 : 1;
+         p += 2;
+         width = nextInt();
+         height = nextInt();
+         maxValue = nextInt();
+         if (width < 1 || height < 1 || maxValue < 1 || maxValue > MAX_SAMPLE)
+         {
+            throw new IllegalArgumentException("Graymap or pixmap header " + width + " " + height + " " + maxValue +
+                  " not accepted, terminating.");
+         }
+         long samples = (long) width * height * channels;
+         if (binary)
+         {
+            p++;                                                               // The single whitespace after maxval.
+         }
+         if (binary ? p + samples * (maxValue > MAX_BYTE_SAMPLE ? 2 : 1) > in.limit()
+               : samples > (in.limit() - p + 1) / 2)                          // A text sample is a digit and a separator.
+         {
+            throw new IllegalArgumentException("Graymap or pixmap is shorter than its header says, terminating.");
+         }
+         if (maxValue <= MAX_BYTE_SAMPLE)
+         {
+            scaled = new int[MAX_BYTE_SAMPLE + 1];
+            for (int v = 0; v <= MAX_BYTE_SAMPLE; v++)
+            {
+               scaled[v] = scale(Math.min(v, maxValue));
+            }
+         }
+      }
+
+      /**
+       * Method nextInt reads the next decimal number of the text, skipping whitespace and comments.
+       *
+       * @return The number.
+       */
+      int nextInt()
+      {
+         int limit = in.limit();
+         while (p < limit)
+         {
+            int b = in.get(p);
+            if (b == '#')
+            {
+               while (p < limit && in.get(p) != '\n' && in.get(p) != '\r')
+               {
+                  p++;
+               }
+            }
+            else if (Character.isWhitespace(b))
+            {
+               p++;
+            }
+            else
+            {
+               break;
+            }
+         }
+         int start = p;
+         long value = 0L;
+         while (p < limit && in.get(p) >= '0' && in.get(p) <= '9' && value <= Integer.MAX_VALUE)
+         {
+            value = 10L * value + (in.get(p) - '0');
+            p++;
+         }
+         if (p == start || value > Integer.MAX_VALUE)
+         {
+            throw new IllegalArgumentException("Graymap or pixmap number expected at byte " + start + ", terminating.");
+         }
+         return (int) value;
+      }
+
+      /**
+       * Method nextSample reads the next sample and scales it to 0 to 255.
+       *
+       * @return The sample.
+       */
+      int nextSample()
+      {
+         int value;
+         if (!binary)
+         {
+            value = nextInt();
+         }
+         else if (maxValue <= MAX_BYTE_SAMPLE)
+         {
+            value = in.get(p++) & 0xFF;
+         }
+         else
+         {
+            value = ((in.get(p) & 0xFF) << 8) | (in.get(p + 1) & 0xFF);
+            p += 2;
+         }
+         return scaled != null && value <= MAX_BYTE_SAMPLE ? scaled[value] : scale(Math.min(value, maxValue));
+      }
+
+      /**
+       * Method scale rounds a sample from 0 to maxval to the nearest value from 0 to 255.
+       *
+       * @param value The sample.
+       * @return The scaled sample.
+       */
+      int scale(int value)
+      {
+         return (int) (((long) value * MAX_BYTE_SAMPLE + maxValue / 2) / maxValue);
+      }
+
+      /**
+       * Method readRow reads the next row of the image as true color pels.
+       *
+       * @param pels The array receiving the pels.
+       * @param offset The index of the row's first pel.
+       */
+      void readRow(int[] pels, int offset)
+      {
+         if (binary && channels == 1 && scaled != null)                       // The common case, one byte per pel.
+         {
+            for (int c = 0; c < width; c++)
+            {
+               int gray = scaled[in.get(p + c) & 0xFF];
+               pels[offset + c] = (gray << 16) | (gray << 8) | gray;
+            }
+            p += width;
+            return;
+         }
+         for (int c = 0; c < width; c++)
+         {
+            if (channels == 1)
+            {
+               int gray = nextSample();
+               pels[offset + c] = (gray << 16) | (gray << 8) | gray;
+            }
+            else
+            {
+               int red = nextSample();
+               int green = nextSample();
+               pels[offset + c] = (red << 16) | (green << 8) | nextSample();
+            }
+         }
+      }
+   }
+
+   /**
+    * Method isPnm tells whether a file starts with the signature of a graymap or pixmap that this class reads.
+    *
+    * @param file The contents of the file, from its position on.
+    * @return True for P2, P3, P5 and P6.
+    */
+   static boolean isPnm(ByteBuffer file)
+   {
+      int start = file.position();
+      if (file.remaining() < 3 || file.get(start) != 'P' || !Character.isWhitespace(file.get(start + 2)))
+      {
+         return false;
+      }
+      int kind = file.get(start + 1);
+      return kind == '2' || kind == '3' || kind == '5' || kind == '6';
+   }
+
+   public String[] extensions()
+   {
+      return new String[] {".pgm", ".ppm", ".pnm"};
+   }
+
+   public boolean accepts(String name, ByteBuffer file)
+   {
+      return isPnm(file);
+   }
+
+   public Bitmap decode(ByteBuffer file, Bitmap reuse)
+   {
+      Reader reader = new Reader(file);
+      int width = reader.width;
+      int height = reader.height;
+      Bitmap bitmap = reuse != null && reuse.width == width && reuse.height == height ? reuse : new Bitmap(width, height);
+      bitmap.bitCount = reader.channels * Byte.SIZE;
+      bitmap.xPelsPerMeter = 0;
+      bitmap.yPelsPerMeter = 0;
+      for (int r = 0; r < height; r++)
+      {
+         reader.readRow(bitmap.pels, r * width);
+      }
+      return bitmap;
+   }
+}
@@ -0,0 +1,56 @@
+package src;
+
+/**
+ * The PrecisionBenchmark class compares training in double precision with training in float precision (see FloatPerceptron).
+ * Both runs start from the same weights and take the same number of steps. Each run's trainer is made with the input file's
+ * precision setting replaced, as a Sweep replaces settings, so it sets itself up for that precision. The report gives the
+ * error reached, the training speed, and two sizes of the weights and partials: those the training loop reads and writes at
+ * every step, which float precision halves, and all that are held. Float precision holds more, since the FloatPerceptron
+ * keeps the Perceptron's double weights and partials alongside its own float ones.
+ *
+ * Usage: java src.PrecisionBenchmark inputsFile trialCasesFile truthsFile [steps]
+ * The comparison takes the given number of steps (500 by default) regardless of the input file's end conditions. The input file
+ * must not ask for more than one thread.
+ */
+public class PrecisionBenchmark
+{
+   static final int DEFAULT_STEPS = 500;
+
+   /**
+    * Runs the comparison.
+    *
+    * @param args The input, trial cases and truths files, then the optional number of steps.
+    */
+   public static void main(String[] args)
+   {
+      int steps = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_STEPS;
+      double[] startingWeights = null;
+      for (boolean singlePrecision : new boolean[] {false, true})
+      {
+         String precision = "precision " + (singlePrecision ? "float" : "double");
+         Trainer trainer = new Trainer(args[0], args[1], args[2], null, new String[] {precision});
+         if (startingWeights == null)
+         {
+            startingWeights = trainer.perceptron.weights.clone();
+         }
+         System.arraycopy(startingWeights, 0, trainer.perceptron.weights, 0, startingWeights.length);
+         if (trainer.floatPerceptron != null)
+         {
+            trainer.floatPerceptron.loadWeights();
+         }
+
+         long startTime = System.nanoTime();
+         for (int step = 0; step < steps; step++)
+         {
+            trainer.step();
+         }
+         double seconds = (System.nanoTime() - startTime) / 1E9;
+         long movedBytes = 2L * startingWeights.length * (singlePrecision ? Float.BYTES : Double.BYTES);
+         long heldBytes = 2L * startingWeights.length * (singlePrecision ? Float.BYTES + Double.BYTES : Double.BYTES);
+         System.out.printf("%-6s error after %d steps: %.9f (%.1f steps/sec, weights and partials: %d KB used by each step, "
+               + "%d KB held, kernels %s)%n", singlePrecision ? "float" : "double", steps, trainer.currError, steps / seconds,
+               movedBytes / 1024, heldBytes / 1024, trainer.kernels);
+         trainer.close();
+      }
+   }
+}
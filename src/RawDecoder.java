@@ -0,0 +1,76 @@
+package src;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The RawDecoder class decodes raw 8-bit grayscale dumps as the RAW format of ImageDecoder: one byte per pel, 0 for black and
+ * 255 for white, from the top row down, with no header. The file's length gives the number of pels, so the width must be
+ * known; a decoder made with a width of 0 takes every image to be square.
+ */
+public class RawDecoder implements ImageDecoder
+{
+   int width;                                    // The pels per row, or 0 for square images.
+
+   /**
+    * Creates a decoder for raw images of one width.
+    *
+    * @param width The pels per row, or 0 for square images.
+    */
+   public RawDecoder(int width)
+   {
+      this.width = width;
+   }
+
+   public String[] extensions()
+   {
+      return new String[] {".raw", ".gray"};
+   }
+
+   public boolean accepts(String name, ByteBuffer file)
+   {
+      String lower = name.toLowerCase();
+      for (String extension : extensions())
+      {
+         if (lower.endsWith(extension))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Method width finds the width of an image of the given number of pels.
+    *
+    * @param pels The length of the file.
+    * @return The width.
+    */
+   int width(int pels)
+   {
+      int side = width > 0 ? width : (int) Math.round(Math.sqrt(pels));
+      if (pels == 0 || side == 0 || pels % side != 0 || (width == 0 && side * side != pels))
+      {
+         throw new IllegalArgumentException("Raw image of " + pels + " pels is not " + (width > 0 ? width + " wide" : "square")
+               + ", terminating.");
+      }
+      return side;
+   }
+
+   public Bitmap decode(ByteBuffer file, Bitmap reuse)
+   {
+      int start = file.position();
+      int pels = file.remaining();
+      int columns = width(pels);
+      int rows = pels / columns;
+      Bitmap bitmap = reuse != null && reuse.width == columns && reuse.height == rows ? reuse : new Bitmap(columns, rows);
+      bitmap.bitCount = Byte.SIZE;
+      bitmap.xPelsPerMeter = 0;
+      bitmap.yPelsPerMeter = 0;
+      for (int i = 0; i < pels; i++)
+      {
+         int gray = file.get(start + i) & 0xFF;
+         bitmap.pels[i] = (gray << 16) | (gray << 8) | gray;
+      }
+      return bitmap;
+   }
+}
@@ -0,0 +1,242 @@
+package src;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * The StreamingCaseSource class hands out the cases of a binary dataset file (see BinaryDataset) by reading the file in chunks,
+ * so the cases never all have to be in memory at once. The memory it uses depends only on the chunk, block and shuffle buffer
+ * sizes, not on the size of the file, and files larger than 2GB are fine.
+ *
+ * Shuffled passes use a bounded shuffle buffer. The buffer is first filled with the cases at the start of the file. Each case
+ * handed out after that is picked at random from the buffer, and its place is refilled with the next case from the file. A
+ * buffer as large as the dataset gives a full shuffle, and smaller buffers only move cases within a window of the file. Rows are
+ * swapped between the buffer and the block instead of being copied.
+ */
+public class StreamingCaseSource implements CaseSource
+{
+   static final int CHUNK_CASES = 256;            // Number of cases read from the file at once.
+
+   FileChannel channel;
+   int numberCases;
+   int inputNodes;
+   int outputNodes;
+   int rowBytes;
+
+   ByteBuffer chunk;                               // The cases most recently read from the file.
+   DoubleBuffer chunkDoubles;                      // View of the chunk when the values are doubles.
+   FloatBuffer chunkFloats;                        // View of the chunk when the values are floats.
+   int rowValues;                                  // Values per case in the chunk.
+   int chunkCount;                                 // Number of cases in the chunk.
+   int chunkNext;                                  // The next case of the chunk to use.
+   int fileNext;                                   // The index of the next case to read from the file.
+
+   double[][] blockInputs;                         // The rows that the blocks point at.
+   double[][] blockTruths;
+
+   double[][] shuffleInputs;                       // The shuffle buffer, empty when shuffling is off.
+   double[][] shuffleTruths;
+   int shuffleCount;                               // The number of cases in the shuffle buffer.
+   boolean shuffling;                              // True during a shuffled pass.
+   Random random;
+
+   /**
+    * Opens a dataset file for streaming.
+    *
+    * @param filename The name of the dataset file.
+    * @param numberCases The number of cases in a pass, which may be less than the number in the file.
+    * @param blockCases The largest number of cases that will be asked for in one block.
+    * @param shuffleCases The size of the shuffle buffer, or 0 to always hand the cases out in file order.
+    * @throws IOException If the file cannot be opened or is not a dataset file.
+    */
+   public StreamingCaseSource(String filename, int numberCases, int blockCases, int shuffleCases) throws IOException
+   {
+      channel = new RandomAccessFile(filename, "r").getChannel();
+      BinaryDataset header;
+      try
+      {
+         header = BinaryDataset.readHeader(channel, filename);
+         if (numberCases > header.numberCases)
+         {
+            throw new IOException(filename + " holds only " + header.numberCases + " cases");
+         }
+      }
+      catch (IOException e)
+      {
+         channel.close();
+         throw e;
+      }
+      this.numberCases = numberCases;
+      this.inputNodes = header.inputNodes;
+      this.outputNodes = header.outputNodes;
+      this.rowValues = header.rowValues;
+      this.rowBytes = header.rowValues * header.valueBytes;
+
+      chunk = ByteBuffer.allocateDirect(CHUNK_CASES * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+      if (header.valueBytes == Double.BYTES)
+      {
+         chunkDoubles = chunk.asDoubleBuffer();
+      }
+      else
+      {
+         chunkFloats = chunk.asFloatBuffer();
+      }
+
+      blockInputs = new double[blockCases][inputNodes];
+      blockTruths = new double[blockCases][outputNodes];
+      shuffleInputs = new double[shuffleCases][inputNodes];
+      shuffleTruths = new double[shuffleCases][outputNodes];
+      random = new Random();
+   }
+
+   public int numberCases()
+   {
+      return numberCases;
+   }
+
+   /**
+    * Starts a new pass from the beginning of the file, filling the shuffle buffer if the pass is shuffled.
+    *
+    * @param shuffled True to shuffle the pass, which has no effect without a shuffle buffer.
+    */
+   public void rewind(boolean shuffled)
+   {
+      fileNext = 0;
+      chunkCount = 0;
+      chunkNext = 0;
+      shuffling = shuffled && shuffleInputs.length > 0;
+      shuffleCount = 0;
+      if (shuffling)
+      {
+         while (shuffleCount < shuffleInputs.length && fileNext < numberCases)
+         {
+            readNext(shuffleInputs[shuffleCount], shuffleTruths[shuffleCount]);
+            shuffleCount++;
+         }
+      }
+   }
+
+   public int nextBlock(double[][] inputs, double[][] truths)
+   {
+      int count = 0;
+      while (count < inputs.length && (shuffling ? shuffleCount > 0 : fileNext < numberCases))
+      {
+         if (shuffling)
+         {
+            int pick = random.nextInt(shuffleCount);
+            swap(blockInputs, count, shuffleInputs, pick);
+            swap(blockTruths, count, shuffleTruths, pick);
+
+            if (fileNext < numberCases)
+            {
+               readNext(shuffleInputs[pick], shuffleTruths[pick]);     // Refill the picked place from the file.
+            }
+            else
+            {
+               shuffleCount--;                                          // Close the gap with the last case in the buffer.
+               swap(shuffleInputs, pick, shuffleInputs, shuffleCount);
+               swap(shuffleTruths, pick, shuffleTruths, shuffleCount);
+            }
+         }
+         else
+         {
+            readNext(blockInputs[count], blockTruths[count]);
+         }
+         inputs[count] = blockInputs[count];
+         truths[count] = blockTruths[count];
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * Method close closes the dataset file.
+    */
+   public void close()
+   {
+      try
+      {
+         channel.close();
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Dataset file " + e.toString() + " could not be closed, terminating.");
+      }
+   }
+
+   /**
+    * Method readNext copies the next case of the file into the given rows, reading another chunk of the file when needed.
+    *
+    * @param inputs The row receiving the input activations.
+    * @param truth The row receiving the expected outputs.
+    */
+   void readNext(double[] inputs, double[] truth)
+   {
+      if (chunkNext == chunkCount)
+      {
+         readChunk();
+      }
+      int index = chunkNext * rowValues;
+      if (chunkDoubles != null)
+      {
+         chunkDoubles.get(index, inputs, 0, inputNodes);
+         chunkDoubles.get(index + inputNodes, truth, 0, outputNodes);
+      }
+      else
+      {
+         for (int i = 0; i < inputNodes; i++)
+         {
+            inputs[i] = chunkFloats.get(index + i);
+         }
+         for (int i = 0; i < outputNodes; i++)
+         {
+            truth[i] = chunkFloats.get(index + inputNodes + i);
+         }
+      }
+      chunkNext++;
+      fileNext++;
+   }
+
+   /**
+    * Method readChunk reads the next CHUNK_CASES cases of the file, or as many as are left in the pass.
+    */
+   void readChunk()
+   {
+      chunkCount = Math.min(CHUNK_CASES, numberCases - fileNext);
+      chunkNext = 0;
+      chunk.clear().limit(chunkCount * rowBytes);
+      try
+      {
+         BinaryDataset.readFully(channel, chunk, BinaryDataset.HEADER_BYTES + (long) fileNext * rowBytes);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Dataset file " + e.toString() + " could not be read, terminating.");
+      }
+      if (chunk.hasRemaining())
+      {
+         throw new IllegalStateException("Dataset file ended early, terminating.");
+      }
+   }
+
+   /**
+    * Method swap exchanges two rows between (or within) arrays of rows.
+    *
+    * @param a The first array.
+    * @param i The index in the first array.
+    * @param b The second array.
+    * @param j The index in the second array.
+    */
+   static void swap(double[][] a, int i, double[][] b, int j)
+   {
+      double[] row = a[i];
+      a[i] = b[j];
+      b[j] = row;
+   }
+}
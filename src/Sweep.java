@@ -0,0 +1,344 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The Sweep class searches for good settings by training many perceptrons at once, each with different settings, and ranks
+ * them by the error they reach. The cases are read once, and every run trains on that one copy, which no run changes. The
+ * runs share a pool of a fixed number of threads, so at most that many trainers exist at once.
+ *
+ * Usage: java src.Sweep inputsFile trialCasesFile truthsFile sweepFile
+ * Every run starts from the inputs file. The sweep file has one line per setting to vary, the setting's name followed by its
+ * values, and the lines below, which are all optional:
+ * - search grid, the default, which makes one run for every combination of the values.
+ * - search random n, which makes n runs, each picking one of the values of every setting at random.
+ * - pool n, the number of runs trained at once, by default the number of processors.
+ * - seed n, the seed of the random search.
+ * The settings may be any optional setting of the inputs file, or lambda, lambdaMultiplier, lambdaDivider, lowValue, highValue
+ * and hiddenLayers, whose values are the hidden layer sizes separated by commas, such as 125,25. In a random search a setting
+ * may instead have a single range low:high, picked from uniformly, or on a logarithmic scale if both ends are above zero, and
+ * rounded to four significant digits.
+ * For example:
+ *    search random 40
+ *    lambda 0.05:5.0
+ *    lambdaMultiplier 1.0 1.5 2.0
+ *    hiddenLayers 50 125,25
+ * Each run stops as training would: at the minimum error, the step limit, or one of the stopping policies of the inputs file.
+ * The report ranks the runs by final error, then steps, then wall time.
+ */
+public class Sweep
+{
+   static final String GRID = "grid";
+   static final String RANDOM = "random";
+   static final String RANGE = ":";
+
+   String inputFile;
+   String search;                                // GRID or RANDOM.
+   int randomRuns;                               // Number of runs of a random search.
+   int pool;                                     // Number of runs trained at once.
+   long seed;
+   List<String> names;                           // The settings varied.
+   List<String[]> values;                        // The values of each setting varied.
+   double[][] trialCases;                        // The cases shared by every run.
+   double[][] truths;
+
+   /**
+    * The settings and results of one run.
+    */
+   static class Run
+   {
+      String[] settings;                         // Setting lines that replace those of the inputs file.
+      double error;
+      int steps;
+      double seconds;
+      String end;                                // Why training ended.
+
+      Run(String[] settings)
+      {
+         this.settings = settings;
+         error = Double.NaN;
+      }
+   }
+
+   /**
+    * Creates a sweep, reading the sweep file and the cases.
+    *
+    * @param inputFile The inputs file that every run starts from.
+    * @param activationsFile The trial cases file.
+    * @param truthsFile The truths file.
+    * @param sweepFile The sweep file.
+    */
+   public Sweep(String inputFile, String activationsFile, String truthsFile, String sweepFile)
+   {
+      this.inputFile = inputFile;
+      readSweepFile(sweepFile);
+      try (Trainer template = new Trainer(inputFile, activationsFile, truthsFile, null))
+      {
+         if (template.streaming)
+         {
+            throw new IllegalArgumentException("A sweep needs the cases in memory, not streaming, terminating.");
+         }
+         trialCases = template.trialCases;
+         truths = template.truths;
+      }
+   }
+
+   /**
+    * Runs the sweep and prints the ranked runs.
+    *
+    * @param args The inputs, trial cases, truths and sweep files.
+    */
+   public static void main(String[] args)
+   {
+      Sweep sweep = new Sweep(args[0], args[1], args[2], args[3]);
+      List<Run> runs = sweep.runAll(sweep.makeRuns());
+      sweep.printTable(runs);
+   }
+
+   /**
+    * Method readSweepFile reads the settings to vary and how to search them.
+    *
+    * @param sweepFile The sweep file.
+    */
+   void readSweepFile(String sweepFile)
+   {
+      search = GRID;
+      pool = Runtime.getRuntime().availableProcessors();
+      seed = System.nanoTime();
+      names = new ArrayList<>();
+      values = new ArrayList<>();
+      try (BufferedReader bufferedReader = new BufferedReader(new FileReader(sweepFile)))
+      {
+         String line;
+         while ((line = bufferedReader.readLine()) != null)
+         {
+            StringTokenizer stringTokenizer = new StringTokenizer(line);
+            if (!stringTokenizer.hasMoreTokens())
+            {
+               continue;
+            }
+            String name = stringTokenizer.nextToken();
+            String[] lineValues = new String[stringTokenizer.countTokens()];
+            for (int i = 0; i < lineValues.length; i++)
+            {
+               lineValues[i] = stringTokenizer.nextToken();
+            }
+            if (lineValues.length == 0)
+            {
+               throw new IllegalArgumentException("Sweep setting " + name + " has no values, terminating.");
+            }
+            switch (name)
+            {
+               case "search":
+                  search = lineValues[0];
+                  if (search.equals(RANDOM) && lineValues.length > 1)
+                  {
+                     randomRuns = Integer.parseInt(lineValues[1]);
+                  }
+                  if (!search.equals(GRID) && !(search.equals(RANDOM) && randomRuns > 0))
+                  {
+                     throw new IllegalArgumentException("Search " + line.trim() + " not accepted, terminating.");
+                  }
+                  break;
+               case "pool":
+                  pool = Integer.parseInt(lineValues[0]);
+                  if (pool < 1)
+                  {
+                     throw new IllegalArgumentException("Pool size " + lineValues[0] + " not accepted, terminating.");
+                  }
+                  break;
+               case "seed":
+                  seed = Long.parseLong(lineValues[0]);
+                  break;
+               default:
+                  names.add(name);
+                  values.add(lineValues);
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         throw new IllegalArgumentException("Sweep File " + e.toString() + " not accepted, terminating.");
+      }
+      for (String[] settingValues : values)
+      {
+         if (search.equals(GRID) && Arrays.stream(settingValues).anyMatch(value -> value.contains(RANGE)))
+         {
+            throw new IllegalArgumentException("Ranges need a random search, terminating.");
+         }
+      }
+   }
+
+   /**
+    * Method makeRuns lists the settings of every run of the search.
+    *
+    * @return The runs, not yet trained.
+    */
+   List<Run> makeRuns()
+   {
+      List<Run> runs = new ArrayList<>();
+      if (search.equals(GRID))
+      {
+         int[] choice = new int[names.size()];                                // Counts through the combinations like an odometer.
+         boolean more = true;
+         while (more)
+         {
+            String[] settings = new String[names.size()];
+            for (int s = 0; s < settings.length; s++)
+            {
+               settings[s] = names.get(s) + " " + values.get(s)[choice[s]];
+            }
+            runs.add(new Run(settings));
+            more = false;
+            for (int s = 0; s < choice.length && !more; s++)
+            {
+               choice[s]++;
+               more = choice[s] < values.get(s).length;
+               if (!more)
+               {
+                  choice[s] = 0;
+               }
+            }
+         }
+      }
+      else
+      {
+         Random random = new Random(seed);
+         for (int r = 0; r < randomRuns; r++)
+         {
+            String[] settings = new String[names.size()];
+            for (int s = 0; s < settings.length; s++)
+            {
+               settings[s] = names.get(s) + " " + pick(values.get(s), random);
+            }
+            runs.add(new Run(settings));
+         }
+      }
+      return runs;
+   }
+
+   /**
+    * Method pick picks one value of a setting for a random search.
+    *
+    * @param settingValues The values of the setting, or a single range low:high.
+    * @param random The random numbers of the search.
+    * @return The value picked.
+    */
+   static String pick(String[] settingValues, Random random)
+   {
+      int range = settingValues[0].indexOf(RANGE);
+      if (settingValues.length > 1 || range < 0)
+      {
+         return settingValues[random.nextInt(settingValues.length)];
+      }
+      double low = Double.parseDouble(settingValues[0].substring(0, range));
+      double high = Double.parseDouble(settingValues[0].substring(range + 1));
+      if (low > 0.0 && high > 0.0)
+      {
+         double logLow = Math.log(low);
+         return String.format(Locale.ROOT, "%.4g", Math.exp(logLow + random.nextDouble() * (Math.log(high) - logLow)));
+      }
+      return String.format(Locale.ROOT, "%.4g", low + random.nextDouble() * (high - low));
+   }
+
+   /**
+    * Method runAll trains every run on the pool of threads and waits for them all.
+    *
+    * @param runs The runs.
+    * @return The same runs, trained.
+    */
+   List<Run> runAll(List<Run> runs)
+   {
+      System.out.println("Sweeping " + runs.size() + " runs, " + pool + " at once");
+      ExecutorService executor = Executors.newFixedThreadPool(pool, runnable ->
+      {
+         Thread thread = new Thread(runnable, "Sweep run");
+         thread.setDaemon(true);
+         return thread;
+      });
+      List<Future<?>> futures = new ArrayList<>();
+      for (Run run : runs)
+      {
+         futures.add(executor.submit(() -> train(run)));
+      }
+      try
+      {
+         for (Future<?> future : futures)
+         {
+            future.get();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Sweep interrupted, terminating.");
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalStateException("Sweep run failed, terminating.", e.getCause());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+      return runs;
+   }
+
+   /**
+    * Method train trains one run with Trainer.trainSteps, so it stops as Trainer.train would, and closes its trainer. A run
+    * whose settings are not accepted records why instead of stopping the sweep.
+    *
+    * @param run The run.
+    */
+   void train(Run run)
+   {
+      long startTime = System.nanoTime();
+      try
+      {
+         try (Trainer trainer = new Trainer(inputFile, trialCases, truths, run.settings))
+         {
+            run.end = trainer.trainSteps();
+            run.error = trainer.currError;
+            run.steps = trainer.counter;
+         }
+      }
+      catch (IllegalArgumentException e)
+      {
+         run.end = e.getMessage();
+      }
+      run.seconds = (System.nanoTime() - startTime) / 1E9;
+   }
+
+   /**
+    * Method printTable prints the runs ranked by final error, then steps, then wall time. Runs whose settings were not
+    * accepted come last.
+    *
+    * @param runs The trained runs.
+    */
+   void printTable(List<Run> runs)
+   {
+      List<Run> ranked = new ArrayList<>(runs);
+      ranked.sort(Comparator.comparingDouble((Run run) -> Double.isNaN(run.error) ? Double.MAX_VALUE : run.error)
+            .thenComparingInt(run -> run.steps).thenComparingDouble(run -> run.seconds));
+      System.out.printf("%-5s %-14s %-8s %-9s %-40s %s%n", "Rank", "Error", "Steps", "Seconds", "Settings", "Ended by");
+      for (int r = 0; r < ranked.size(); r++)
+      {
+         Run run = ranked.get(r);
+         System.out.printf("%-5d %-14.8g %-8d %-9.2f %-40s %s%n", r + 1, run.error, run.steps, run.seconds,
+               String.join(", ", run.settings), run.end);
+      }
+   }
+}
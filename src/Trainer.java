@@ -1,8 +1,10 @@
 package src;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.StringTokenizer;
 
 /**
@@ -19,21 +21,27 @@ import java.util.StringTokenizer;
  * Functions in this class include the following:
  * - main, which asks the user for an input file through the System.in and then runs the Trainer.
  * - readInputFile, which reads the input from the constructor's filename then populates the class-level variables.
+ * - readSetting, which reads one of the optional named settings at the end of the input file.
  * - readInputActivations, which reads the inputs and then populates the input activatiions.
  * - readTruths, which reads the inputs and then populates the expected outputs.
  * - printOutputsToFile, which writes the final outputs to a file, each line in the output file representing the trained result for each case.
  * - train, which begins the training and also provides diagnostic information after completion.
+ * - trainSteps, which takes steps until one of the end conditions is met, and is the whole of training without the report.
  * - step, which takes the individual steps during training. Matches documentation as closely as possible.
+ * - stepInParallel, which trains the batches of a step on several threads (see TrainingWorker).
+ * - keepOrRollBack, which adapts lambda and, with rollback on, undoes a step that made the error worse.
+ * - restore, which loads the weights, and optionally the training state, from a checkpoint file (see Checkpoint).
+ * - close, which ends the threads that the trainer started, once it is no longer needed.
  */
-public class Trainer
+public class Trainer implements Closeable
 {
    Perceptron perceptron;
    String inputFile;
    String activationsFile;
    String truthsFile;
    String outputsFile;
-   static double MINIMUM_ERROR;
-   static int MAX_STEPS;
+   double MINIMUM_ERROR;                      // Training ends once the error is at most this.
+   int MAX_STEPS;                             // Training ends once this many steps have been taken.
    double[][] trialCases;
    int counter;                               // Counter checks the number of steps.
    double[][] truths;                         // A truth is an expected output.
@@ -47,11 +55,59 @@ public class Trainer
    double lambdaDivider;                      // Constant used to divide when adapting lambda.
    double currError;
    double prevError;                          // Used in adaptive lambda.
+   boolean rollback;                          // True to undo any step that makes the error worse.
+   double[] trialWeights;                     // The weights at the start of the current step, kept in case it is undone.
+   double[] acceptedWeights;                  // The weights at the start of the last step that was kept.
+   float[] trialFloatWeights;                 // The same two buffers for float precision.
+   float[] acceptedFloatWeights;
+   boolean accepted;                          // True once a step has been kept, so acceptedWeights can be restored.
+   boolean retrying;                          // True during the step after a rollback, which is always kept.
+   double acceptedLambda;                     // The lambda that the last kept step trained with.
 
    int inputNodes;                            // The number of nodes in the input activation layer.
    int[] hiddenLayerNodes;                    // The number of nodes in each hidden activation layer.
    int outputNodes;                           // The number of nodes in the output activation layer.
 
+   static final String ALL_CASES = "all";     // Batch size setting that puts every trial case into a single batch.
+   int batchSize;                             // Number of trial cases whose partials are combined into one weight update.
+   int threads;                               // Number of threads that share the cases of each batch.
+   ActivationFunction activationFunction;     // Threshold function used by the perceptron.
+   Kernels kernels;                           // Inner loops used by the perceptron, scalar or vectorized.
+   boolean singlePrecision;                   // True to train with the weights and activations stored as floats.
+   FloatPerceptron floatPerceptron;           // The float form of the perceptron, used instead of it when singlePrecision is set.
+   String optimizerName;                      // The optimizer that applies each update (see Optimizer).
+   double[] optimizerDecays;                  // The optimizer's decay rates, or none for its defaults.
+
+   WorkerGroup workerGroup;                   // Runs the workers when training with more than one thread.
+   TrainingWorker[] workers;
+   double[] caseErrors;                       // The error of each case of the current block.
+
+   static final int BLOCK_CASES = 256;        // The largest number of cases taken from the case source at once.
+   boolean streaming;                         // True to read the cases from a dataset file during each step instead of loading them.
+   int shuffleBuffer;                         // Size of the streaming shuffle buffer, 0 for no shuffling.
+   CaseSource source;                         // Where each step gets its cases from.
+   Augmentation augmentation;                 // The variations made to the cases of each step, if any.
+   double[][] blockInputs;                    // The input activations of the current block of cases.
+   double[][] blockTruths;                    // The expected outputs of the current block of cases.
+   Workspace[] blockWorkspaces;               // One workspace per case of a block, for the batched forward pass.
+
+   String checkpointFile;                     // File that training checkpoints are written to, or null for none.
+   int checkpointInterval;                    // Number of steps between checkpoints, 0 to write one only at the end.
+   CheckpointWriter checkpointWriter;
+
+   String metricsFile;                        // CSV file that the live training metrics are appended to, or null for none.
+   int metricsPort;                           // Local HTTP port that the live training metrics are served on, 0 for none.
+   long metricsInterval;                      // Milliseconds between samples of the metrics.
+   boolean layerTiming;                       // True to time every layer of forward and back propagation for the metrics.
+   TrainingMetrics metrics;                   // The live training metrics, or null if they are off.
+   EarlyStopping stopping;                    // The stopping policies checked after every step, besides the minimum error and step limit.
+   String stopReason;                         // Why training ended, or null while it goes on.
+
+   AllocationMeter allocationMeter;           // Counts the heap allocations of the trainer and worker threads during each step.
+   long stepAllocatedBytes;                   // Bytes allocated by the last step.
+   long trainingAllocatedBytes;               // Bytes allocated by all of the steps of train.
+   int allocatingSteps;                       // Number of steps of train that allocated anything.
+
    /**
     * Creates a new trainer for a perceptron, using the user-provided input filename. All files must follow the structure provided in the
     * README.md file.
@@ -62,19 +118,131 @@ public class Trainer
     * @param outputsFile The name of the file to which the perceptron's final outputs will be printed.
     */
    public Trainer(String inputFile, String activationsFile, String truthsFile, String outputsFile)
+   {
+      this(inputFile, activationsFile, truthsFile, outputsFile, new String[0]);
+   }
+
+   /**
+    * Creates a new trainer that reads its cases from files, and changes some of the settings of the input file, such as the
+    * precision of a benchmark run.
+    *
+    * @param inputFile The input file name.
+    * @param activationsFile The name of the file containing activations.
+    * @param truthsFile The name of the file containing expected outputs.
+    * @param outputsFile The name of the file to which the perceptron's final outputs will be printed.
+    * @param settings Settings that replace those of the input file, as for the trainers of a Sweep.
+    */
+   public Trainer(String inputFile, String activationsFile, String truthsFile, String outputsFile, String[] settings)
+   {
+      this(inputFile, activationsFile, truthsFile, outputsFile, null, null, settings);
+   }
+
+   /**
+    * Creates a new trainer that trains on cases already in memory instead of reading them from files, and changes some of the
+    * settings of the input file. Trainers made this way may share the same cases, which they only read. Used by Sweep.
+    *
+    * @param inputFile The input file name.
+    * @param trialCases The input activations, one row per case, as many as the input file's number of cases.
+    * @param truths The expected outputs, one row per case.
+    * @param settings Settings that replace those of the input file, each a line as in the optional settings. Besides the
+    *                 optional settings these may be lambda, lambdaMultiplier, lambdaDivider, lowValue, highValue and
+    *                 hiddenLayers, whose value is the hidden layer sizes separated by commas.
+    */
+   public Trainer(String inputFile, double[][] trialCases, double[][] truths, String[] settings)
+   {
+      this(inputFile, null, null, null, trialCases, truths, settings);
+   }
+
+   /**
+    * Creates a new trainer from an input file and either files of cases or cases in memory.
+    *
+    * @param inputFile The input file name.
+    * @param activationsFile The name of the file containing activations, or null if trialCases is given.
+    * @param truthsFile The name of the file containing expected outputs, or null if truths is given.
+    * @param outputsFile The name of the file to which the perceptron's final outputs will be printed.
+    * @param trialCases The input activations in memory, or null to read them from activationsFile.
+    * @param truths The expected outputs in memory, or null to read them from truthsFile.
+    * @param settings Settings that replace those of the input file.
+    */
+   private Trainer(String inputFile, String activationsFile, String truthsFile, String outputsFile, double[][] trialCases,
+         double[][] truths, String[] settings)
    {
       this.inputFile = inputFile;
       this.activationsFile = activationsFile;
       this.truthsFile = truthsFile;
       this.outputsFile = outputsFile;
       readInputFile();
+      for (String setting : settings)
+      {
+         StringTokenizer stringTokenizer = new StringTokenizer(setting);
+         readOverride(stringTokenizer.nextToken(), stringTokenizer);
+      }
+      checkSettings();
       this.currError = Double.MAX_VALUE - 1.0;                                // The current error begins as large as possible.
       this.counter = 0;
       perceptron = new Perceptron(this.inputNodes, this.hiddenLayerNodes, this.outputNodes);
       perceptron.randomizeWeights(lowValue, highValue);                       // Randomize the weights before the first use.
-      readInputActivations();
-      readTruths();
+      if (streaming)
+      {
+         source = openStream();
+      }
+      else if (trialCases != null)
+      {
+         if (trialCases.length != numberCases || truths.length != numberCases)
+         {
+            throw new IllegalArgumentException("Cases in memory do not match the input file, terminating.");
+         }
+         this.trialCases = trialCases;
+         this.truths = truths;
+         source = new ArrayCaseSource(trialCases, truths);
+      }
+      else
+      {
+         this.trialCases = new double[numberCases][inputNodes];
+         this.truths = new double[numberCases][outputNodes];
+         readInputActivations();
+         readTruths();
+         source = new ArrayCaseSource(this.trialCases, this.truths);
+      }
+      if (augmentation.isOn())
+      {
+         CaseSource feed = streaming ? openStream() : new ArrayCaseSource(this.trialCases, this.truths);
+         source = new AugmentingCaseSource(source, feed, augmentation, inputNodes, outputNodes, BLOCK_CASES);
+      }
+      blockInputs = new double[BLOCK_CASES][];
+      blockTruths = new double[BLOCK_CASES][];
+      blockWorkspaces = new Workspace[BLOCK_CASES];
+      for (int i = 0; i < BLOCK_CASES; i++)
+      {
+         blockWorkspaces[i] = new Workspace(perceptron, false);
+         blockWorkspaces[i].partials = perceptron.partials;                   // Every case of a batch adds into the same partials.
+      }
       perceptron.lambda = lambda;
+      perceptron.activationFunction = activationFunction;
+      perceptron.kernels = kernels;
+      perceptron.optimizer = Optimizer.forName(optimizerName, optimizerDecays, perceptron.weights.length);
+      if (singlePrecision)
+      {
+         floatPerceptron = new FloatPerceptron(perceptron);
+      }
+      if (threads > 1)
+      {
+         createWorkers();
+      }
+      allocationMeter = createAllocationMeter();
+      if (checkpointFile != null)
+      {
+         checkpointWriter = new CheckpointWriter(checkpointFile, perceptron);
+      }
+      if (metricsFile != null || metricsPort > 0)
+      {
+         if (layerTiming)
+         {
+            perceptron.layerTimes = new LayerTimes(perceptron);
+         }
+         metrics = new TrainingMetrics(perceptron.layerTimes, metricsFile, metricsPort, metricsInterval);
+      }
+      stopping.load(this);
    }
 
    /**
@@ -87,6 +255,8 @@ public class Trainer
     *             The second argument must be the name of the activations file.
     *             The third argument must be the name of the truths file.
     *             The fourth argument must be the name of the outputs file.
+    *             The optional fifth argument is "resume", to continue training from the checkpoint file given as the sixth argument,
+    *             or "infer", to load only the weights of that checkpoint and write the outputs without training.
     */
    public static void main(String[] args)
    {
@@ -95,8 +265,28 @@ public class Trainer
       String activationsFilename = args[1];
       String truthsFilename = args[2];
       String outputFilename = args[3];
-      Trainer trainer = new Trainer(filename, activationsFilename, truthsFilename, outputFilename);
-      trainer.train();
+      String mode = args.length > 4 ? args[4] : "train";
+      try (Trainer trainer = new Trainer(filename, activationsFilename, truthsFilename, outputFilename))
+      {
+         if (mode.equals("train"))
+         {
+            trainer.train();
+         }
+         else if (mode.equals("resume") && args.length > 5)
+         {
+            trainer.restore(args[5], false);
+            trainer.train();
+         }
+         else if (mode.equals("infer") && args.length > 5)
+         {
+            trainer.restore(args[5], true);
+            trainer.printOutputsToFile();
+         }
+         else
+         {
+            throw new IllegalArgumentException("Mode " + mode + " needs a checkpoint file or is not accepted, terminating.");
+         }
+      }
       long endTime = System.nanoTime();
       double time = (endTime - startTime)/1E6;
       System.out.println("Time: " + time);
@@ -126,8 +316,6 @@ public class Trainer
          outputNodes = Integer.parseInt(bufferedReader.readLine());                          // Find number of output nodes
 
          numberCases = Integer.parseInt(bufferedReader.readLine());                          // Find the number of trial cases
-         trialCases = new double[numberCases][inputNodes];
-         truths = new double[numberCases][outputNodes];
          lambda = Double.parseDouble(bufferedReader.readLine());                             // Lambda
          MAX_LAMBDA = Double.parseDouble(bufferedReader.readLine());                         // Lambda Cap
          lambdaMultiplier = Double.parseDouble(bufferedReader.readLine());                   // Lambda Multiplier
@@ -136,6 +324,35 @@ public class Trainer
          MAX_STEPS = Integer.parseInt(bufferedReader.readLine());                            // Steps
          lowValue = Double.parseDouble(bufferedReader.readLine());                           // Low Value
          highValue = Double.parseDouble(bufferedReader.readLine());                          // High Value
+
+         batchSize = 1;                                                                      // Defaults for the optional settings.
+         threads = 1;
+         activationFunction = ActivationFunction.SIGMOID;
+         kernels = Kernels.best();
+         singlePrecision = false;
+         optimizerName = "sgd";
+         optimizerDecays = new double[0];
+         rollback = false;
+         streaming = false;
+         shuffleBuffer = 0;
+         checkpointFile = null;
+         checkpointInterval = 0;
+         metricsFile = null;
+         metricsPort = 0;
+         metricsInterval = 1000L;
+         layerTiming = false;
+         stopping = new EarlyStopping();
+         augmentation = new Augmentation();
+
+         String line;
+         while ((line = bufferedReader.readLine()) != null)                                  // Optional settings, one per line.
+         {
+            stringTokenizer = new StringTokenizer(line);
+            if (stringTokenizer.hasMoreTokens())
+            {
+               readSetting(stringTokenizer.nextToken(), stringTokenizer);
+            }
+         }
          bufferedReader.close();
       }  // Reads the input file.
       catch (IOException e)
@@ -145,8 +362,368 @@ public class Trainer
 
    }
 
+   /**
+    * Method checkSettings checks that the settings read from the input file, and any that replaced them, work together.
+    */
+   void checkSettings()
+   {
+      if (threads > 1 && batchSize == 1)
+      {
+         throw new IllegalArgumentException("Training with " + threads + " threads needs a batch size above 1, terminating.");
+      }
+      if (threads > 1 && singlePrecision)
+      {
+         throw new IllegalArgumentException("Float precision trains on a single thread, terminating.");
+      }
+      if (singlePrecision && !optimizerName.equals("sgd"))
+      {
+         throw new IllegalArgumentException("Float precision trains with the sgd optimizer only, terminating.");
+      }
+      if (streaming && activationsFile == null)
+      {
+         throw new IllegalArgumentException("Streaming reads the cases from a dataset file, not from cases in memory, "
+               + "terminating.");
+      }
+      if (rollback && !optimizerName.equals("sgd"))
+      {
+         throw new IllegalArgumentException("Rollback works with the sgd optimizer only, terminating.");
+      }
+      if (checkpointInterval > 0 && checkpointFile == null)
+      {
+         throw new IllegalArgumentException("A checkpoint interval needs a checkpoint file, terminating.");
+      }
+      if (layerTiming && metricsFile == null && metricsPort == 0)
+      {
+         throw new IllegalArgumentException("Layer timing needs a metrics file or port, terminating.");
+      }
+      if (stopping.validationTruthsFile != null && stopping.validationCasesFile == null)
+      {
+         throw new IllegalArgumentException("Validation truths need validation cases, terminating.");
+      }
+      if (augmentation.isOn())
+      {
+         augmentation.check(inputNodes);
+      }
+   }
+
+   /**
+    * Method readOverride reads a setting that replaces one of the input file, which may be one of the numbered lines of the
+    * input file as well as any optional setting.
+    *
+    * @param name The name of the setting.
+    * @param values The rest of the setting's line.
+    */
+   void readOverride(String name, StringTokenizer values)
+   {
+      switch (name)
+      {
+         case "lambda":
+            lambda = Double.parseDouble(values.nextToken());
+            break;
+         case "lambdaMultiplier":
+            lambdaMultiplier = Double.parseDouble(values.nextToken());
+            break;
+         case "lambdaDivider":
+            lambdaDivider = Double.parseDouble(values.nextToken());
+            break;
+         case "lowValue":
+            lowValue = Double.parseDouble(values.nextToken());
+            break;
+         case "highValue":
+            highValue = Double.parseDouble(values.nextToken());
+            break;
+         case "hiddenLayers":
+            String value = values.nextToken();
+            StringTokenizer sizes = new StringTokenizer(value, ",");
+            hiddenLayerNodes = new int[sizes.countTokens()];
+            for (int i = 0; i < hiddenLayerNodes.length; i++)
+            {
+               hiddenLayerNodes[i] = Integer.parseInt(sizes.nextToken());
+               if (hiddenLayerNodes[i] < 1)
+               {
+                  throw new IllegalArgumentException("Hidden layers " + value + " not accepted, terminating.");
+               }
+            }
+            break;
+         default:
+            readSetting(name, values);
+      }
+   }
+
+   /**
+    * Method readSetting reads one of the optional settings that may follow the twelfth line of the input file. Each setting is
+    * its name followed by its value, as specified in the README file.
+    *
+    * @param name The name of the setting.
+    * @param values The rest of the setting's line.
+    */
+   void readSetting(String name, StringTokenizer values)
+   {
+      String value = values.nextToken();
+      switch (name)
+      {
+         case "batchSize":
+            batchSize = value.equals(ALL_CASES) ? numberCases : Integer.parseInt(value);
+            if (batchSize < 1)
+            {
+               throw new IllegalArgumentException("Batch size " + value + " not accepted, terminating.");
+            }
+            break;
+         case "threads":
+            threads = Integer.parseInt(value);
+            if (threads < 1)
+            {
+               throw new IllegalArgumentException("Thread count " + value + " not accepted, terminating.");
+            }
+            break;
+         case "activation":
+            activationFunction = ActivationFunction.forName(value);
+            break;
+         case "kernels":
+            kernels = Kernels.forName(value);
+            break;
+         case "precision":
+            if (!value.equals("double") && !value.equals("float"))
+            {
+               throw new IllegalArgumentException("Precision " + value + " not accepted, terminating.");
+            }
+            singlePrecision = value.equals("float");
+            break;
+         case "optimizer":
+            optimizerName = value;
+            optimizerDecays = new double[values.countTokens()];
+            for (int i = 0; i < optimizerDecays.length; i++)
+            {
+               optimizerDecays[i] = Double.parseDouble(values.nextToken());
+            }
+            break;
+         case "rollback":
+            rollback = Boolean.parseBoolean(value);
+            break;
+         case "streaming":
+            streaming = Boolean.parseBoolean(value);
+            break;
+         case "shuffleBuffer":
+            shuffleBuffer = Integer.parseInt(value);
+            if (shuffleBuffer < 0)
+            {
+               throw new IllegalArgumentException("Shuffle buffer " + value + " not accepted, terminating.");
+            }
+            break;
+         case "checkpointFile":
+            checkpointFile = value;
+            break;
+         case "checkpointInterval":
+            checkpointInterval = Integer.parseInt(value);
+            if (checkpointInterval < 0)
+            {
+               throw new IllegalArgumentException("Checkpoint interval " + value + " not accepted, terminating.");
+            }
+            break;
+         case "metricsFile":
+            metricsFile = value;
+            break;
+         case "metricsPort":
+            metricsPort = Integer.parseInt(value);
+            if (metricsPort < 0 || metricsPort > 65535)
+            {
+               throw new IllegalArgumentException("Metrics port " + value + " not accepted, terminating.");
+            }
+            break;
+         case "metricsInterval":
+            metricsInterval = Long.parseLong(value);
+            if (metricsInterval < 1)
+            {
+               throw new IllegalArgumentException("Metrics interval " + value + " not accepted, terminating.");
+            }
+            break;
+         case "layerTiming":
+            layerTiming = Boolean.parseBoolean(value);
+            break;
+         case "plateauWindow":
+            stopping.plateauWindow = Integer.parseInt(value);
+            if (stopping.plateauWindow < 0)
+            {
+               throw new IllegalArgumentException("Plateau window " + value + " not accepted, terminating.");
+            }
+            break;
+         case "minImprovement":
+            stopping.minImprovement = Double.parseDouble(value);
+            if (!(stopping.minImprovement >= 0.0))
+            {
+               throw new IllegalArgumentException("Minimum improvement " + value + " not accepted, terminating.");
+            }
+            break;
+         case "timeBudget":
+            stopping.timeBudget = Double.parseDouble(value);
+            if (!(stopping.timeBudget >= 0.0))
+            {
+               throw new IllegalArgumentException("Time budget " + value + " not accepted, terminating.");
+            }
+            break;
+         case "validationCases":
+            stopping.validationCasesFile = value;
+            break;
+         case "validationTruths":
+            stopping.validationTruthsFile = value;
+            break;
+         case "validationInterval":
+            stopping.validationInterval = Integer.parseInt(value);
+            if (stopping.validationInterval < 1)
+            {
+               throw new IllegalArgumentException("Validation interval " + value + " not accepted, terminating.");
+            }
+            break;
+         case "validationPatience":
+            stopping.validationPatience = Integer.parseInt(value);
+            if (stopping.validationPatience < 1)
+            {
+               throw new IllegalArgumentException("Validation patience " + value + " not accepted, terminating.");
+            }
+            break;
+         case "augmentShift":
+            augmentation.shift = Integer.parseInt(value);
+            if (augmentation.shift < 0)
+            {
+               throw new IllegalArgumentException("Augmentation shift " + value + " not accepted, terminating.");
+            }
+            break;
+         case "augmentFlip":
+            if (!value.equals(Augmentation.NONE) && !value.equals(Augmentation.HORIZONTAL) && !value.equals(Augmentation.VERTICAL)
+                  && !value.equals(Augmentation.BOTH))
+            {
+               throw new IllegalArgumentException("Augmentation flip " + value + " not accepted, terminating.");
+            }
+            augmentation.flip = value;
+            break;
+         case "augmentScale":
+            augmentation.scale = Double.parseDouble(value);
+            if (!(augmentation.scale >= 0.0 && augmentation.scale < 1.0))
+            {
+               throw new IllegalArgumentException("Augmentation scale " + value + " not accepted, terminating.");
+            }
+            break;
+         case "augmentNoise":
+            augmentation.noise = Double.parseDouble(value);
+            if (!(augmentation.noise >= 0.0))
+            {
+               throw new IllegalArgumentException("Augmentation noise " + value + " not accepted, terminating.");
+            }
+            break;
+         case "augmentBuffer":
+            augmentation.buffer = Integer.parseInt(value);
+            if (augmentation.buffer < 1)
+            {
+               throw new IllegalArgumentException("Augmentation buffer " + value + " not accepted, terminating.");
+            }
+            break;
+         case "imageWidth":
+            augmentation.imageWidth = Integer.parseInt(value);
+            if (augmentation.imageWidth < 1)
+            {
+               throw new IllegalArgumentException("Image width " + value + " not accepted, terminating.");
+            }
+            break;
+         default:
+            throw new IllegalArgumentException("Setting " + name + " not accepted, terminating.");
+      }
+   }
+
+   /**
+    * Method createWorkers starts the threads for multi-threaded training and gives each worker an equal range of the weights
+    * to update. The threads are daemons, so they never keep the program running once training is over, and close ends them.
+    */
+   void createWorkers()
+   {
+      caseErrors = new double[BLOCK_CASES];
+
+      workers = new TrainingWorker[threads];
+      for (int k = 0; k < threads; k++)
+      {
+         workers[k] = new TrainingWorker(perceptron, blockInputs, blockTruths, caseErrors);
+      }
+      for (int k = 0; k < threads; k++)
+      {
+         workers[k].workers = workers;
+         workers[k].firstWeight = (int) ((long) perceptron.weights.length * k / threads);
+         workers[k].lastWeight = (int) ((long) perceptron.weights.length * (k + 1) / threads);
+      }
+      workerGroup = new WorkerGroup("Trainer worker", workers);
+   }
+
+   /**
+    * Method close ends the worker threads, the checkpoint writer's thread and the augmentation producer, and closes the case
+    * source's files. A trainer cannot train once it is closed. Every trainer made by a long-lived program, such as one per run
+    * of a Sweep, should be closed so that its threads, files and the buffers they hold do not outlive it.
+    */
+   public void close()
+   {
+      if (workerGroup != null)
+      {
+         workerGroup.close();
+      }
+      if (checkpointWriter != null)
+      {
+         checkpointWriter.close();
+      }
+      source.close();
+   }
+
+   /**
+    * Method createAllocationMeter makes the meter that counts what each step allocates, on this thread and on the worker threads.
+    *
+    * @return The meter.
+    */
+   AllocationMeter createAllocationMeter()
+   {
+      return workerGroup == null ? new AllocationMeter() : new AllocationMeter(workerGroup.threads);
+   }
+
+   /**
+    * Method measureStep runs one step and records how many bytes it allocated in stepAllocatedBytes. Once the code is warmed
+    * up a step allocates nothing, on any of the training paths.
+    */
+   void measureStep()
+   {
+      long start = allocationMeter.allocatedBytes();
+      step();
+      stepAllocatedBytes = allocationMeter.since(start);
+   }
+
+   /**
+    * Method openStream opens the activations file, which must be a binary dataset file, as a streaming case source. The cases
+    * are then read from the file during every step and never all held in memory. The file's rows must have as many inputs
+    * and outputs as the input file says.
+    *
+    * @return The streaming source.
+    */
+   CaseSource openStream()
+   {
+      if (!BinaryDataset.isDataset(activationsFile))
+      {
+         throw new IllegalArgumentException("Streaming needs a binary dataset file, " + activationsFile + " not accepted, terminating.");
+      }
+      StreamingCaseSource stream;
+      try
+      {
+         stream = new StreamingCaseSource(activationsFile, numberCases, BLOCK_CASES, shuffleBuffer);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalArgumentException("Activations File " + e.toString() + " not accepted, terminating.");
+      }
+      if (stream.inputNodes != inputNodes || stream.outputNodes != outputNodes)
+      {
+         stream.close();
+         throw new IllegalArgumentException("Dataset " + activationsFile + " does not match the input file, terminating.");
+      }
+      return stream;
+   }
+
    /**
     * Method readInputActivations uses the input file specified to read and load the input activations as specified.
+    * The file may also be a binary dataset file (see BinaryDataset), which is memory mapped instead of parsed, including one
+    * with no outputs, as ActivationWriter writes.
     * Uses a try-catch to handle I/O exceptions.
     */
    public void readInputActivations()
@@ -155,6 +732,11 @@ public class Trainer
       StringTokenizer s;
       try
       {
+         if (BinaryDataset.isDataset(activationsFile))
+         {
+            openDataset(activationsFile, true).readInputs(trialCases);
+            return;
+         }
          br = new BufferedReader(new FileReader(activationsFile));
          for (int i = 0; i < numberCases; i++)
          {
@@ -175,6 +757,7 @@ public class Trainer
 
    /**
     * Method readTruths() uses the input file specified to read and load the expected outputs, or truths, as specified.
+    * The file may also be a binary dataset file (see BinaryDataset), which is memory mapped instead of parsed.
     * Uses a try-catch to handle I/O exceptions.
     */
    public void readTruths()
@@ -182,6 +765,11 @@ public class Trainer
       BufferedReader br;
       try
       {
+         if (BinaryDataset.isDataset(truthsFile))
+         {
+            openDataset(truthsFile, false).readTruths(truths);
+            return;
+         }
          br = new BufferedReader(new FileReader(truthsFile));
 
          for (int i = 0; i < numberCases; i++)
@@ -201,6 +789,25 @@ public class Trainer
       }
    }
 
+   /**
+    * Method openDataset memory maps a binary dataset file and checks that it matches the input file.
+    *
+    * @param filename The name of the dataset file.
+    * @param inputsOnly True if only the inputs are read, so a dataset without outputs is accepted too.
+    * @return The dataset.
+    * @throws IOException If the file cannot be mapped.
+    */
+   BinaryDataset openDataset(String filename, boolean inputsOnly) throws IOException
+   {
+      BinaryDataset dataset = BinaryDataset.open(filename);
+      if (dataset.inputNodes != inputNodes || (dataset.outputNodes != outputNodes && !(inputsOnly && dataset.outputNodes == 0))
+            || dataset.numberCases < numberCases)
+      {
+         throw new IllegalArgumentException("Dataset " + filename + " does not match the input file, terminating.");
+      }
+      return dataset;
+   }
+
    /**
     * Method printOutputsToFile takes the perceptron's current outputs and writes them to a specified file.
     * Uses a try-catch to handle I/O exceptions.
@@ -211,14 +818,20 @@ public class Trainer
       try
       {
          pw = new PrintWriter(outputsFile);
-         for (int j = 0; j < numberCases; j++)
+         source.rewind(false);                                                               // Outputs are written in file order.
+         int count;
+         while ((count = source.nextBlock(blockInputs, blockTruths)) > 0)
          {
-            perceptron.runNetwork(trialCases[j]);
-            for (int i = 0; i < perceptron.outputNodes; i++)
+            perceptron.runNetwork(blockInputs, 0, count, blockWorkspaces);
+            for (int j = 0; j < count; j++)
             {
-               pw.write(perceptron.activations[perceptron.activations.length - 1][i] + " "); // Writes all values in last layer.
+               double[] outputs = blockWorkspaces[j].outputs();
+               for (int i = 0; i < perceptron.outputNodes; i++)
+               {
+                  pw.write(outputs[i] + " ");                                                   // Writes all values in last layer.
+               }
+               pw.println();
             }
-            pw.println();
          }
          pw.close();
       }
@@ -229,34 +842,18 @@ public class Trainer
    }
 
    /**
-    * Function train makes steps and modifies the perceptron's weights using gradient descent until one of two conditions are met:
+    * Function train makes steps and modifies the perceptron's weights using gradient descent until one of three conditions are met:
     * 1. The error is less than a minimum error, or
-    * 2. The training is capped by a predetermined counter.
+    * 2. The training is capped by a predetermined counter, or
+    * 3. One of the stopping policies of the optional settings ends it, see EarlyStopping.
     * Only randomizes the perceptron's weights the first time, after that it does not.
+    * The counter is not reset, so training restored from a checkpoint continues from the checkpoint's step.
     * Also provides statistics at the end for readability after program terminates.
     */
    void train()
    {
-      counter = 0;
-
       System.out.println("Beginning Training"); //TODO: REMOVE
-
-      while ((currError > MINIMUM_ERROR && counter < MAX_STEPS))
-      {
-         step();
-         counter++;
-        // System.out.println("Iteration " + counter + " completed. Error: " + currError + ".");
-      }
-
-      if (currError <= MINIMUM_ERROR) // The first end condition.
-      {
-         System.out.println("Terminated because total error is less than the pre-determined threshold of " + MINIMUM_ERROR);
-      }
-
-      else if (counter >= MAX_STEPS) // The second end condition.
-      {
-         System.out.println("\nTerminated because number of iterations exceeded the pre-determined threshold of " + MAX_STEPS);
-      }
+      System.out.println("Terminated because " + trainSteps());
 
       System.out.print("Perceptron configuration: " + inputNodes + "-");
       for (int i = 0; i < hiddenLayerNodes.length; i++)
@@ -265,45 +862,462 @@ public class Trainer
       }
       System.out.print(outputNodes + "\n");
 
-      System.out.println("Lambda: " + lambda);                                                        // Currently not adaptive.
+      System.out.println("Batch Size: " + batchSize + ", Threads: " + threads + ", Activation Function: " + activationFunction
+            + ", Kernels: " + kernels + ", Precision: " + (singlePrecision ? "float" : "double") + ", Optimizer: "
+            + perceptron.optimizer);
+      System.out.println("Lambda: " + lambda);
       System.out.println("Minimum Error: " + MINIMUM_ERROR + "\nMax Number of Steps: " + MAX_STEPS);  // Print a bunch of debug info.
       System.out.println("For random weights: Low Value " + lowValue + ", High Value " + highValue);
       System.out.println("Number of iterations: " + counter);
       System.out.println("Error: " + currError);
-      // System.out.println("Final weights: " + Arrays.deepToString(perceptron.weights));             // Print final weights for debugging purposes.
+      if (stopping.validationInputs != null && !Double.isNaN(stopping.validationError))
+      {
+         System.out.println("Validation error: " + stopping.validationError + ", best " + stopping.bestValidationError
+               + " at step " + stopping.bestValidationStep);
+      }
+      if (source instanceof AugmentingCaseSource)
+      {
+         AugmentingCaseSource augmenting = (AugmentingCaseSource) source;
+         System.out.println("Augmented cases made: " + augmenting.produced + ", steps waited for them " + augmenting.waits
+               + " times");
+      }
+      if (allocationMeter.isSupported())
+      {
+         System.out.println("Allocated by steps: " + trainingAllocatedBytes + " bytes, " + allocatingSteps
+               + " steps allocated, last step: " + stepAllocatedBytes + " bytes");
+      }
+      if (checkpointWriter != null)
+      {
+         System.out.println("Checkpoints written to " + checkpointFile + ": " + checkpointWriter.written + ", skipped while busy: "
+               + checkpointWriter.skipped);
+      }
+      // System.out.println("Final weights: " + Arrays.toString(perceptron.weights));                 // Print final weights for debugging purposes.
       printOutputsToFile();                                                                           // Writes final outputs to file.
 
 
    }
 
+   /**
+    * Method trainSteps makes steps until one of the end conditions of train is met, recording the metrics and writing the
+    * checkpoints as it goes, and writes the final checkpoint. It prints nothing, so a caller that only wants the result, such
+    * as a run of a Sweep, trains exactly as train does.
+    *
+    * @return Why training ended, finishing the sentence "Terminated because".
+    */
+   String trainSteps()
+   {
+      if (metrics != null)
+      {
+         metrics.start();
+      }
+      stopping.start();
+      stopReason = null;
+
+      while (currError > MINIMUM_ERROR && counter < MAX_STEPS && stopReason == null)
+      {
+         long stepStart = metrics == null ? 0L : System.nanoTime();
+         measureStep();
+         trainingAllocatedBytes += stepAllocatedBytes;
+         if (stepAllocatedBytes > 0)
+         {
+            allocatingSteps++;
+         }
+         counter++;
+         if (metrics != null)
+         {
+            metrics.record(counter, currError, lambda, System.nanoTime() - stepStart);
+         }
+         if (checkpointInterval > 0 && counter % checkpointInterval == 0)
+         {
+            storeFloatWeights();
+            checkpointWriter.offer(counter, lambda, prevError, currError);
+         }
+         if (currError > MINIMUM_ERROR)
+         {
+            stopReason = stopping.check(this);
+         }
+        // System.out.println("Iteration " + counter + " completed. Error: " + currError + ".");  // See the metrics settings instead.
+      }
+      if (metrics != null)
+      {
+         metrics.finish();
+      }
+      storeFloatWeights();
+      if (checkpointWriter != null)
+      {
+         checkpointWriter.finish(counter, lambda, prevError, currError);
+      }
+
+      if (currError <= MINIMUM_ERROR) // The first end condition.
+      {
+         stopReason = "total error is less than the pre-determined threshold of " + MINIMUM_ERROR;
+      }
+      else if (counter >= MAX_STEPS) // The second end condition.
+      {
+         stopReason = "number of iterations exceeded the pre-determined threshold of " + MAX_STEPS;
+      }
+      return stopReason;                                                     // Otherwise one of the stopping policies.
+   }
+
+
+   /**
+    * Method storeFloatWeights copies the float weights into the perceptron when training in float precision, so that the
+    * perceptron's weights can be checkpointed or used to write the outputs.
+    */
+   void storeFloatWeights()
+   {
+      if (floatPerceptron != null)
+      {
+         floatPerceptron.storeWeights();
+      }
+   }
+
+   /**
+    * Method restore loads a checkpoint file written by an earlier run with the same configuration. The weights are always
+    * loaded. The counter, lambda and errors are loaded too unless only the weights are wanted, so that training goes on from
+    * where the checkpoint was taken.
+    *
+    * @param filename The name of the checkpoint file.
+    * @param weightsOnly True to load only the weights, for using a trained network without training it further.
+    */
+   void restore(String filename, boolean weightsOnly)
+   {
+      Checkpoint checkpoint;
+      try
+      {
+         checkpoint = Checkpoint.load(filename);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalArgumentException("Checkpoint File " + e.toString() + " not accepted, terminating.");
+      }
+      checkpoint.checkActivation(activationFunction);
+      checkpoint.restoreWeights(perceptron);
+      if (!weightsOnly)
+      {
+         counter = checkpoint.counter;
+         lambda = checkpoint.lambda;
+         prevError = checkpoint.prevError;
+         currError = checkpoint.currError;
+      }
+      if (floatPerceptron != null)
+      {
+         floatPerceptron.loadWeights();
+      }
+      useLambda();
+      accepted = false;                                                      // The restored weights are the ones to keep.
+      retrying = false;
+   }
+
+   /**
+    * Method useLambda gives the trainer's lambda to the perceptron that trains, so that changes made by adaptLambda take effect.
+    */
+   void useLambda()
+   {
+      perceptron.lambda = lambda;
+      if (floatPerceptron != null)
+      {
+         floatPerceptron.lambda = (float) lambda;
+      }
+   }
 
    /**
     * Function step runs an individual step in the training process. A step is defined as defining the expected outputs of the current case, then
     * running the network using the current trial case, then modifies the weights of the perceptron using back propagation.
+    * With a batch size of one the weights change after every case. Otherwise the partials of each batch of cases are accumulated and
+    * applied once at the end of the batch; the last batch of a step may be smaller than the rest.
+    * The cases are taken from the case source one block at a time. Batches do not have to line up with blocks.
+    * Within a batch the weights do not change, so the forward passes of a batch's cases in each block run together as one
+    * batched forward pass (see Perceptron.runNetwork) before their partials are accumulated.
     */
    public void step()
    {
       prevError = currError;
       double errors = 0.0;
-      for (int tc = 0; tc < trialCases.length; tc++)
+      int casesInBatch = 0;                                                                  // Cases accumulated since the last update.
+      int tc = 0;                                                                            // Cases of this step before the current block.
+      if (rollback)
       {
-         perceptron.expectedOutputs = truths[tc];
-         perceptron.runNetwork(trialCases[tc]);
-         perceptron.backProp(truths[tc]);
+         saveTrialWeights();
+      }
 
-         double[] trainedResult = perceptron.activations[perceptron.activations.length - 1]; // Find error after weight updates
+      source.rewind(true);
+      int count;
+      while ((count = source.nextBlock(blockInputs, blockTruths)) > 0)
+      {
+         if (threads > 1)
+         {
+            casesInBatch = stepInParallel(count, tc, casesInBatch);
+            for (int i = 0; i < count; i++)
+            {
+               errors += caseErrors[i];                                                      // Summed in case order, exactly like below.
+            }
+         }
+         else if (singlePrecision)
+         {
+            for (int i = 0; i < count; i++)
+            {
+               floatPerceptron.runNetwork(blockInputs[i]);
+               if (batchSize == 1)
+               {
+                  floatPerceptron.backProp(blockTruths[i]);
+               }
+               else
+               {
+                  floatPerceptron.accumulatePartials(blockTruths[i]);
+                  casesInBatch++;
+                  if (casesInBatch == batchSize || tc + i == numberCases - 1)                 // End of a batch.
+                  {
+                     floatPerceptron.applyPartials();
+                     casesInBatch = 0;
+                  }
+               }
+               errors += floatPerceptron.caseError(blockTruths[i]);
+            } // for (int i = 0; i < count; i++)
+         }
+         else if (batchSize == 1)
+         {
+            for (int i = 0; i < count; i++)
+            {
+               perceptron.expectedOutputs = blockTruths[i];
+               perceptron.runNetwork(blockInputs[i]);
+               perceptron.backProp(blockTruths[i]);
 
-         double newError = 0;
-         for (int i = 0; i < perceptron.outputNodes; i++)
+               double[] trainedResult = perceptron.activations[perceptron.activations.length - 1]; // Find error after weight updates
+               errors += caseError(perceptron, blockTruths[i], trainedResult);
+            } // for (int i = 0; i < count; i++)
+         }
+         else
          {
-            newError += 0.5 * perceptron.calculateError(truths[tc][i], trainedResult[i]);    // We could sum directly over errors, but this is better
-         }                                                                                   // for debugging.
-         errors += newError;
-      } // for (int tc = 0; tc < trialCases.length; tc++)
+            int start = 0;
+            while (start < count)                                                            // One piece of the block per batch.
+            {
+               int end = start + Math.min(count - start, batchSize - casesInBatch);
+               perceptron.runNetwork(blockInputs, start, end, blockWorkspaces);             // The weights are fixed until the batch ends.
+               for (int i = start; i < end; i++)
+               {
+                  perceptron.expectedOutputs = blockTruths[i];
+                  perceptron.accumulatePartials(blockTruths[i], blockWorkspaces[i]);
+                  errors += caseError(perceptron, blockTruths[i], blockWorkspaces[i].outputs());
+               }
+               casesInBatch += end - start;
+               start = end;
+               if (casesInBatch == batchSize || tc + start == numberCases)                     // End of a batch.
+               {
+                  perceptron.applyPartials();
+                  casesInBatch = 0;
+               }
+            } // while (start < count)
+         }
+         tc += count;
+      } // while ((count = source.nextBlock(blockInputs, blockTruths)) > 0)
       currError = errors;
-      adaptLambda();
+      if (perceptron.optimizer == Optimizer.SGD)                                             // The others adapt each weight's step.
+      {
+         keepOrRollBack();
+      }
+   }
+
+   /**
+    * Function stepInParallel trains one block of cases across the worker threads. The block is cut wherever a batch ends, each
+    * piece is split into one contiguous shard per worker, and the partials are added into the weights at the end of every batch,
+    * as explained in TrainingWorker. The error of each case of the block is left in caseErrors.
+    *
+    * @param count The number of cases in the block.
+    * @param tc The number of cases of this step before the block.
+    * @param casesInBatch The number of cases accumulated since the last update, before the block.
+    * @return The number of cases accumulated since the last update, after the block.
+    */
+   int stepInParallel(int count, int tc, int casesInBatch)
+   {
+      int start = 0;
+      while (start < count)
+      {
+         int size = Math.min(count - start, batchSize - casesInBatch);
+         for (int k = 0; k < threads; k++)
+         {
+            TrainingWorker worker = workers[k];
+            worker.firstCase = start + size * k / threads;
+            worker.lastCase = start + size * (k + 1) / threads;
+            worker.reducing = false;
+         }
+         runWorkers();
+         start += size;
+         casesInBatch += size;
+
+         if (casesInBatch == batchSize || tc + start == numberCases)                         // End of a batch.
+         {
+            perceptron.optimizer.startUpdate();
+            for (int k = 0; k < threads; k++)
+            {
+               workers[k].reducing = true;
+            }
+            runWorkers();
+            casesInBatch = 0;
+         }
+      } // while (start < count)
+      return casesInBatch;
    }
 
+   /**
+    * Function runWorkers runs the current phase on every worker and waits until all of them are done.
+    */
+   void runWorkers()
+   {
+      workerGroup.runAll();
+   }
+
+   /**
+    * Function totalError finds the error of every case with the current weights, without training, running the cases in
+    * file order through the batched forward pass.
+    *
+    * @return The sum of the errors of the cases.
+    */
+   double totalError()
+   {
+      storeFloatWeights();
+      double errors = 0.0;
+      source.rewind(false);
+      int count;
+      while ((count = source.nextBlock(blockInputs, blockTruths)) > 0)
+      {
+         perceptron.runNetwork(blockInputs, 0, count, blockWorkspaces);
+         for (int i = 0; i < count; i++)
+         {
+            errors += caseError(perceptron, blockTruths[i], blockWorkspaces[i].outputs());
+         }
+      }
+      return errors;
+   }
+
+   /**
+    * Function caseError finds the error of a single case, using the formula written in the design document.
+    *
+    * @param perceptron The perceptron that produced the outputs.
+    * @param truth The expected outputs of the case.
+    * @param outputs The perceptron's outputs for the case.
+    * @return Half of the sum of the squared differences between the truths and the outputs.
+    */
+   static double caseError(Perceptron perceptron, double[] truth, double[] outputs)
+   {
+      double newError = 0;
+      for (int i = 0; i < perceptron.outputNodes; i++)
+      {
+         newError += 0.5 * perceptron.calculateError(truth[i], outputs[i]);                  // We could sum directly over errors, but this is better
+      }                                                                                      // for debugging.
+      return newError;
+   }
+
+
+   /**
+    * Function keepOrRollBack runs after the error of a step is known. Without rollback it only adapts lambda. With rollback, a
+    * step whose error is worse than that of the last kept step is undone instead, and lambda is divided.
+    * The error of a step is found as its cases run. When a step is a single batch, every case runs with the weights from the
+    * start of the step, so the error judges the weight change of the step before. The weights then go back to those at the
+    * start of the last kept step, whose error is known, and lambda becomes the lambda that step trained with, divided. When a
+    * step makes several updates, the error mostly judges the step's own updates, so only this step is undone and its lambda
+    * divided.
+    * The step after a rollback retries with the smaller lambda. It is always kept and leaves lambda as it is, since its error
+    * says little about its lambda: with a single batch it is just the known error of the restored weights again, and with
+    * several updates it would otherwise be judged against an error found with the larger lambda, again and again.
+    * The weights at the start of the last two steps are kept in two buffers whose roles swap whenever a step is kept, so that
+    * each step costs one copy of the weights and nothing is allocated.
+    */
+   void keepOrRollBack()
+   {
+      if (!rollback)
+      {
+         adaptLambda();
+      }
+      else if (accepted && !retrying && currError > prevError)
+      {
+         if (batchSize >= numberCases)                                      // The error judged the step before.
+         {
+            restoreWeights(acceptedWeights, acceptedFloatWeights);
+            lambda = acceptedLambda / lambdaDivider;
+         }
+         else                                                               // The error judged this step.
+         {
+            restoreWeights(trialWeights, trialFloatWeights);
+            lambda /= lambdaDivider;
+         }
+         currError = prevError;                                             // About the error of the weights now in place.
+         retrying = true;
+      }
+      else
+      {
+         keepTrialWeights();
+         accepted = true;
+         acceptedLambda = lambda;
+         if (retrying)
+         {
+            retrying = false;
+         }
+         else
+         {
+            adaptLambda();
+         }
+      }
+      useLambda();
+   }
+
+   /**
+    * Method saveTrialWeights copies the weights at the start of a step into the trial buffer. The buffers are made by the first
+    * step that needs them, in the precision of the perceptron that trains at that time.
+    */
+   void saveTrialWeights()
+   {
+      if (floatPerceptron != null)
+      {
+         if (trialFloatWeights == null)
+         {
+            trialFloatWeights = new float[floatPerceptron.weights.length];
+            acceptedFloatWeights = new float[floatPerceptron.weights.length];
+         }
+         System.arraycopy(floatPerceptron.weights, 0, trialFloatWeights, 0, trialFloatWeights.length);
+      }
+      else
+      {
+         if (trialWeights == null)
+         {
+            trialWeights = new double[perceptron.weights.length];
+            acceptedWeights = new double[perceptron.weights.length];
+         }
+         System.arraycopy(perceptron.weights, 0, trialWeights, 0, trialWeights.length);
+      }
+   }
+
+   /**
+    * Method keepTrialWeights makes the weights saved at the start of this step the ones that a later rollback returns to, by
+    * swapping the trial and accepted buffers.
+    */
+   void keepTrialWeights()
+   {
+      double[] weights = acceptedWeights;
+      acceptedWeights = trialWeights;
+      trialWeights = weights;
+      float[] floatWeights = acceptedFloatWeights;
+      acceptedFloatWeights = trialFloatWeights;
+      trialFloatWeights = floatWeights;
+   }
+
+   /**
+    * Method restoreWeights copies saved weights back into the perceptron that trains.
+    *
+    * @param weights The saved double weights, used in double precision.
+    * @param floatWeights The saved float weights, used in float precision.
+    */
+   void restoreWeights(double[] weights, float[] floatWeights)
+   {
+      if (floatPerceptron != null)
+      {
+         System.arraycopy(floatWeights, 0, floatPerceptron.weights, 0, floatWeights.length);
+      }
+      else
+      {
+         System.arraycopy(weights, 0, perceptron.weights, 0, weights.length);
+      }
+   }
 
    /**
     * Function adaptLambda uses the previously specified multiplier and divider to adapt the lambda value depending on whether the error is getting
@@ -0,0 +1,284 @@
+package src;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TrainingMetrics class lets a long training run be watched while it goes. The Trainer records the step count, error,
+ * lambda and duration of every step into a ring buffer of primitive arrays, which allocates nothing and takes no locks: the
+ * trainer is the only writer, and it publishes each step by advancing the recorded count with a release store. The
+ * perceptron's LayerTimes, if layer timing is on, add up the time spent on each connectivity layer.
+ *
+ * A background thread samples the buffer every interval and finds the steps per second, the mean step time, the latest and
+ * lowest error, lambda, and the forward and backward nanoseconds per step of each layer. Each sample is appended to a CSV
+ * file, served over HTTP on the local machine, or both:
+ * - GET /metrics gives the latest sample, one "name value" line per metric.
+ * - GET /errors gives the error curve of the last HISTORY steps as CSV lines of step, error, lambda and step nanoseconds.
+ * Nothing is sampled or served unless the trainer was given a metrics file or port.
+ */
+public class TrainingMetrics
+{
+   static final int HISTORY = 4096;              // Steps kept in the ring buffer. A power of two.
+   static final String CSV_HEADER = "millis,step,error,minError,lambda,stepsPerSecond,nanosPerStep";
+
+   long[] steps;                                 // The ring buffer, indexed by the recorded count modulo HISTORY.
+   double[] errors;
+   double[] lambdas;
+   long[] stepNanos;
+   AtomicLong recorded;                          // Number of steps recorded so far. Only the trainer writes it.
+
+   LayerTimes layerTimes;                        // Per-layer totals, or null if layer timing is off.
+   String csvFile;
+   int port;                                     // Local HTTP port, or 0 for none.
+   long interval;                                // Milliseconds between samples.
+
+   ScheduledExecutorService sampler;
+   PrintWriter csv;
+   HttpServer server;
+   long startNanos;
+   long sampledCount;                            // The recorded count at the last sample.
+   long sampledNanos;                            // The System.nanoTime of the last sample.
+   long[] sampledForward;                        // The layer totals at the last sample.
+   long[] sampledBackward;
+   volatile String latest;                       // The last sample in the /metrics format.
+
+   /**
+    * Creates the metrics of a training run. Nothing is sampled until start is called.
+    *
+    * @param layerTimes The perceptron's layer times, or null if layer timing is off.
+    * @param csvFile The file the samples are appended to, or null for none.
+    * @param port The local port the samples are served on, or 0 for none.
+    * @param interval The number of milliseconds between samples.
+    */
+   public TrainingMetrics(LayerTimes layerTimes, String csvFile, int port, long interval)
+   {
+      this.layerTimes = layerTimes;
+      this.csvFile = csvFile;
+      this.port = port;
+      this.interval = interval;
+      steps = new long[HISTORY];
+      errors = new double[HISTORY];
+      lambdas = new double[HISTORY];
+      stepNanos = new long[HISTORY];
+      recorded = new AtomicLong();
+      int layers = layerTimes == null ? 0 : layerTimes.layers();
+      sampledForward = new long[layers];
+      sampledBackward = new long[layers];
+      latest = "";
+   }
+
+   /**
+    * Method record adds one step to the ring buffer. It is called by the trainer's thread after every step, and allocates
+    * nothing.
+    *
+    * @param step The step count after the step.
+    * @param error The error of the step.
+    * @param lambda The lambda after the step.
+    * @param nanos How long the step took.
+    */
+   public void record(long step, double error, double lambda, long nanos)
+   {
+      long count = recorded.get();
+      int slot = (int) (count & (HISTORY - 1));
+      steps[slot] = step;
+      errors[slot] = error;
+      lambdas[slot] = lambda;
+      stepNanos[slot] = nanos;
+      recorded.lazySet(count + 1);               // Publishes the slot to the sampler.
+   }
+
+   /**
+    * Method start opens the CSV file and the HTTP server and starts sampling.
+    */
+   public void start()
+   {
+      startNanos = System.nanoTime();
+      sampledNanos = startNanos;
+      sampledCount = recorded.get();
+      try
+      {
+         if (csvFile != null)
+         {
+            csv = new PrintWriter(new BufferedWriter(new FileWriter(csvFile)));
+            csv.println(csvHeader());
+            csv.flush();
+         }
+         if (port > 0)
+         {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> respond(exchange, latest));
+            server.createContext("/errors", exchange -> respond(exchange, errorCurve()));
+            server.start();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new IllegalArgumentException("Metrics " + e.toString() + " not accepted, terminating.");
+      }
+      sampler = Executors.newSingleThreadScheduledExecutor(runnable ->
+      {
+         Thread thread = new Thread(runnable, "Metrics sampler");
+         thread.setDaemon(true);
+         return thread;
+      });
+      sampler.scheduleAtFixedRate(this::sample, interval, interval, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Method finish stops sampling, takes one last sample so the end of training is always included, and closes the CSV file
+    * and the HTTP server.
+    */
+   public void finish()
+   {
+      sampler.shutdown();
+      try
+      {
+         sampler.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      sample();
+      if (csv != null)
+      {
+         csv.close();
+      }
+      if (server != null)
+      {
+         server.stop(0);
+      }
+   }
+
+   /**
+    * Method sample reads the steps recorded since the last sample and the layer totals, and exports the results. It runs on
+    * the sampler thread, or on the trainer's thread once sampling has stopped.
+    */
+   synchronized void sample()
+   {
+      long now = System.nanoTime();
+      long count = recorded.get();
+      if (count == 0)
+      {
+         return;
+      }
+      int slot = (int) ((count - 1) & (HISTORY - 1));
+      long step = steps[slot];
+      double error = errors[slot];
+      double lambda = lambdas[slot];
+      double minError = error;
+      long busyNanos = 0L;
+      long first = Math.max(sampledCount, count - HISTORY);                    // The steps since the last sample still held.
+      for (long i = first; i < count; i++)
+      {
+         minError = Math.min(minError, errors[(int) (i & (HISTORY - 1))]);
+         busyNanos += stepNanos[(int) (i & (HISTORY - 1))];
+      }
+      long nanosPerStep = busyNanos / Math.max(1, count - first);
+      long newSteps = Math.max(1, count - sampledCount);
+      double stepsPerSecond = (count - sampledCount) / ((now - sampledNanos) / 1E9);
+
+      StringBuilder text = new StringBuilder();
+      StringBuilder row = new StringBuilder();
+      text.append("step ").append(step).append('\n');
+      text.append("error ").append(error).append('\n');
+      text.append("min_error ").append(minError).append('\n');
+      text.append("lambda ").append(lambda).append('\n');
+      text.append("steps_per_second ").append(stepsPerSecond).append('\n');
+      text.append("nanos_per_step ").append(nanosPerStep).append('\n');
+      row.append((now - startNanos) / 1000000).append(',').append(step).append(',').append(error).append(',').append(minError)
+            .append(',').append(lambda).append(',').append(stepsPerSecond).append(',').append(nanosPerStep);
+      for (int n = 0; n < sampledForward.length; n++)
+      {
+         long forward = layerTimes.forwardNanos.get(n);
+         long backward = layerTimes.backwardNanos.get(n);
+         long forwardPerStep = (forward - sampledForward[n]) / newSteps;
+         long backwardPerStep = (backward - sampledBackward[n]) / newSteps;
+         sampledForward[n] = forward;
+         sampledBackward[n] = backward;
+         text.append("forward_nanos_per_step{layer=\"").append(n).append("\"} ").append(forwardPerStep).append('\n');
+         text.append("backward_nanos_per_step{layer=\"").append(n).append("\"} ").append(backwardPerStep).append('\n');
+         row.append(',').append(forwardPerStep).append(',').append(backwardPerStep);
+      }
+      sampledCount = count;
+      sampledNanos = now;
+      latest = text.toString();
+      if (csv != null)
+      {
+         csv.println(row);
+         csv.flush();
+      }
+   }
+
+   /**
+    * Method csvHeader names the columns of the CSV file, including two per timed layer.
+    *
+    * @return The header line.
+    */
+   String csvHeader()
+   {
+      StringBuilder header = new StringBuilder(CSV_HEADER);
+      for (int n = 0; n < sampledForward.length; n++)
+      {
+         header.append(",forwardNanos").append(n).append(",backwardNanos").append(n);
+      }
+      return header.toString();
+   }
+
+   /**
+    * Method errorCurve lists the steps still held in the ring buffer, oldest first. Steps that the trainer overwrote while
+    * they were being read are left out.
+    *
+    * @return One "step,error,lambda,nanos" line per step.
+    */
+   String errorCurve()
+   {
+      long count = recorded.get();
+      long first = Math.max(0, count - HISTORY);
+      StringBuilder text = new StringBuilder("step,error,lambda,nanos\n");
+      for (long i = first; i < count; i++)
+      {
+         int slot = (int) (i & (HISTORY - 1));
+         long step = steps[slot];
+         double error = errors[slot];
+         double lambda = lambdas[slot];
+         long nanos = stepNanos[slot];
+         if (recorded.get() - HISTORY > i)         // Overwritten by a newer step while being read.
+         {
+            continue;
+         }
+         text.append(step).append(',').append(error).append(',').append(lambda).append(',').append(nanos).append('\n');
+      }
+      return text.toString();
+   }
+
+   /**
+    * Method respond sends a plain text answer to an HTTP request.
+    *
+    * @param exchange The request.
+    * @param body The answer.
+    * @throws IOException If the answer cannot be sent.
+    */
+   static void respond(HttpExchange exchange, String body) throws IOException
+   {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody())
+      {
+         out.write(bytes);
+      }
+   }
+}
@@ -0,0 +1,94 @@
+package src;
+
+/**
+ * The TrainingWorker class is one of the threads of a multi-threaded Trainer. Each batch is trained in two phases:
+ * 1. Every worker runs its own shard of the batch's cases through the network in its own Workspace, accumulating the partials
+ *    and recording the error of each case. A batch that spans several blocks of cases goes through this phase once per block.
+ * 2. Every worker owns a fixed range of the weights, and adds the partials of all of the workers to that range, always in
+ *    worker order. The result does not depend on how the threads were scheduled.
+ * The weights are only read during the first phase and only written during the second, so no locking is needed.
+ */
+public class TrainingWorker implements Runnable
+{
+   Perceptron perceptron;
+   Workspace workspace;
+   TrainingWorker[] workers;          // Every worker of the trainer, in order, including this one.
+
+   double[][] trialCases;             // The input activations of the trainer's current block of cases.
+   double[][] truths;                 // The expected outputs of the trainer's current block of cases.
+   double[] caseErrors;               // The error of each case of the block, shared by all workers.
+
+   int firstCase;                     // The first case of this worker's shard of the block.
+   int lastCase;                      // One past the last case of this worker's shard.
+   int firstWeight;                   // The first weight that this worker adds the partials into.
+   int lastWeight;                    // One past the last weight that this worker adds the partials into.
+   boolean reducing;                  // True during the second phase of a batch.
+
+   /**
+    * Creates a worker with its own workspace for the given perceptron.
+    *
+    * @param perceptron The perceptron shared by all of the workers.
+    * @param trialCases The array holding the input activations of the trainer's current block of cases.
+    * @param truths The array holding the expected outputs of the trainer's current block of cases.
+    * @param caseErrors The array receiving the error of each case of the block.
+    */
+   public TrainingWorker(Perceptron perceptron, double[][] trialCases, double[][] truths, double[] caseErrors)
+   {
+      this.perceptron = perceptron;
+      this.workspace = new Workspace(perceptron);
+      this.trialCases = trialCases;
+      this.truths = truths;
+      this.caseErrors = caseErrors;
+   }
+
+   /**
+    * Method run runs the current phase of the batch for this worker. The results are left in the workspace, the case errors
+    * and the weights.
+    */
+   public void run()
+   {
+      if (reducing)
+      {
+         reducePartials();
+      }
+      else
+      {
+         accumulateShard();
+      }
+   }
+
+   /**
+    * Method accumulateShard runs this worker's cases through the network and accumulates their partials in the workspace.
+    */
+   void accumulateShard()
+   {
+      for (int tc = firstCase; tc < lastCase; tc++)
+      {
+         perceptron.runNetwork(trialCases[tc], workspace);
+         perceptron.accumulatePartials(truths[tc], workspace);
+         caseErrors[tc] = Trainer.caseError(perceptron, truths[tc], workspace.outputs());
+      }
+   }
+
+   /**
+    * Method reducePartials adds up every worker's partials for this worker's range of the weights into the perceptron's own
+    * partials, clearing the workers' partials for the next batch, then applies the sums through the perceptron's optimizer.
+    * The trainer starts the optimizer's update before the workers reduce.
+    */
+   void reducePartials()
+   {
+      double[] sums = perceptron.partials;
+      for (int w = firstWeight; w < lastWeight; w++)
+      {
+         double sum = 0.0;
+         for (int k = 0; k < workers.length; k++)
+         {
+            double[] partials = workers[k].workspace.partials;
+            sum += partials[w];
+            partials[w] = 0.0;
+         }
+         sums[w] = sum;
+      }
+      perceptron.optimizer.apply(perceptron.lambda, perceptron.weights, sums, firstWeight, lastWeight);
+   }
+}
@@ -0,0 +1,202 @@
+package src;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorKernels class implements the Kernels with the JDK Vector API, using the widest vectors of doubles the hardware
+ * prefers. Each loop works on whole vectors and finishes the leftover elements with the same scalar arithmetic as
+ * Kernels.Scalar. Multiplies and adds are kept separate instead of fused, so axpy and update round exactly like the scalar
+ * loops.
+ *
+ * The float kernels that add in double load FloatVectors with as many lanes as the DoubleVectors and widen them. The float
+ * kernels that stay in float use the widest FloatVectors, which hold twice as many lanes.
+ *
+ * Rows shorter than SHORT_ROW go straight to the scalar kernels, since setting up the vectors costs more than it saves there.
+ *
+ * Only Kernels.vector() should create this class, so that it is never loaded on a JVM without the jdk.incubator.vector module.
+ */
+final class VectorKernels implements Kernels
+{
+   static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+   static final VectorSpecies<Float> WIDENING_SPECIES =           // Floats in half the bits, so as many lanes as SPECIES.
+         VectorSpecies.of(float.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+   static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+   static final int SHORT_ROW = 2 * SPECIES.length();             // Rows shorter than this are left to the scalar loops.
+
+   public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      if (length < SHORT_ROW)
+      {
+         SCALAR.axpy(a, x, xOffset, y, yOffset, length);
+         return;
+      }
+      DoubleVector multiple = DoubleVector.broadcast(SPECIES, a);
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector xs = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+         DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+         ys.add(multiple.mul(xs)).intoArray(y, yOffset + i);
+      }
+      for (; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   }
+
+   public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      if (length < SHORT_ROW)
+      {
+         return SCALAR.dot(x, xOffset, y, yOffset, length);
+      }
+      DoubleVector sums = DoubleVector.zero(SPECIES);
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector xs = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+         DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+         sums = sums.add(xs.mul(ys));
+      }
+      double sum = sums.reduceLanes(VectorOperators.ADD);
+      for (; i < length; i++)
+      {
+         sum += x[xOffset + i] * y[yOffset + i];
+      }
+      return sum;
+   }
+
+   public void update(double a, double[] x, double[] partials, double[] weights, int offset, int length)
+   {
+      if (length < SHORT_ROW)
+      {
+         SCALAR.update(a, x, partials, weights, offset, length);
+         return;
+      }
+      DoubleVector multiple = DoubleVector.broadcast(SPECIES, a);
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector change = multiple.mul(DoubleVector.fromArray(SPECIES, x, i));
+         change.intoArray(partials, offset + i);
+         DoubleVector.fromArray(SPECIES, weights, offset + i).add(change).intoArray(weights, offset + i);
+      }
+      for (; i < length; i++)
+      {
+         partials[offset + i] = a * x[i];
+         weights[offset + i] += partials[offset + i];
+      }
+   }
+
+   public void axpy(double a, float[] x, int xOffset, double[] y, int yOffset, int length)
+   {
+      if (length < SHORT_ROW)
+      {
+         SCALAR.axpy(a, x, xOffset, y, yOffset, length);
+         return;
+      }
+      DoubleVector multiple = DoubleVector.broadcast(SPECIES, a);
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector xs = widen(x, xOffset + i);
+         DoubleVector ys = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+         ys.add(multiple.mul(xs)).intoArray(y, yOffset + i);
+      }
+      for (; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   }
+
+   public void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int length)
+   {
+      if (length < SHORT_ROW)
+      {
+         SCALAR.axpy(a, x, xOffset, y, yOffset, length);
+         return;
+      }
+      FloatVector multiple = FloatVector.broadcast(FLOAT_SPECIES, a);
+      int bound = FLOAT_SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += FLOAT_SPECIES.length())
+      {
+         FloatVector xs = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+         FloatVector ys = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+         ys.add(multiple.mul(xs)).intoArray(y, yOffset + i);
+      }
+      for (; i < length; i++)
+      {
+         y[yOffset + i] += a * x[xOffset + i];
+      }
+   }
+
+   public double dot(float[] x, int xOffset, float[] y, int yOffset, int length)
+   {
+      if (length < SHORT_ROW)
+      {
+         return SCALAR.dot(x, xOffset, y, yOffset, length);
+      }
+      DoubleVector sums = DoubleVector.zero(SPECIES);
+      int bound = SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += SPECIES.length())
+      {
+         sums = sums.add(widen(x, xOffset + i).mul(widen(y, yOffset + i)));
+      }
+      double sum = sums.reduceLanes(VectorOperators.ADD);
+      for (; i < length; i++)
+      {
+         sum += (double) x[xOffset + i] * y[yOffset + i];
+      }
+      return sum;
+   }
+
+   public void update(float a, float[] x, float[] partials, float[] weights, int offset, int length)
+   {
+      if (length < SHORT_ROW)
+      {
+         SCALAR.update(a, x, partials, weights, offset, length);
+         return;
+      }
+      FloatVector multiple = FloatVector.broadcast(FLOAT_SPECIES, a);
+      int bound = FLOAT_SPECIES.loopBound(length);
+      int i = 0;
+      for (; i < bound; i += FLOAT_SPECIES.length())
+      {
+         FloatVector change = multiple.mul(FloatVector.fromArray(FLOAT_SPECIES, x, i));
+         change.intoArray(partials, offset + i);
+         FloatVector.fromArray(FLOAT_SPECIES, weights, offset + i).add(change).intoArray(weights, offset + i);
+      }
+      for (; i < length; i++)
+      {
+         partials[offset + i] = a * x[i];
+         weights[offset + i] += partials[offset + i];
+      }
+   }
+
+   /**
+    * Method widen loads SPECIES.length() floats and converts them to doubles.
+    *
+    * @param x The floats.
+    * @param offset The index of the first float.
+    * @return The doubles.
+    */
+   static DoubleVector widen(float[] x, int offset)
+   {
+      return (DoubleVector) FloatVector.fromArray(WIDENING_SPECIES, x, offset).convertShape(VectorOperators.F2D, SPECIES, 0);
+   }
+
+   public String toString()
+   {
+      return "vector x" + SPECIES.length();
+   }
+}
@@ -0,0 +1,129 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The WorkerGroup class runs a fixed set of tasks, each on its own daemon thread, every time runAll is called, and waits for all
+ * of them to finish. It does the job of ExecutorService.invokeAll for the training workers without allocating anything per
+ * call: the threads are started once and are woken and put back to sleep with LockSupport, and the only shared state is a
+ * generation number and a count of the tasks still running. The threads run until close is called.
+ */
+public class WorkerGroup
+{
+   Runnable[] tasks;
+   Thread[] threads;
+   volatile int generation;                      // Changed by runAll to start another round of the tasks.
+   AtomicInteger running;                        // Number of tasks of the current round that have not finished.
+   volatile Thread caller;                       // The thread waiting in runAll.
+   volatile Throwable failure;                   // The first exception thrown by a task in the current round.
+   volatile boolean closed;                      // Set by close to end the threads.
+
+   /**
+    * Starts one thread per task. The threads wait until runAll is called.
+    *
+    * @param name The name of the threads.
+    * @param tasks The tasks.
+    */
+   public WorkerGroup(String name, Runnable[] tasks)
+   {
+      this.tasks = tasks;
+      running = new AtomicInteger();
+      threads = new Thread[tasks.length];
+      for (int k = 0; k < tasks.length; k++)
+      {
+         int task = k;
+         threads[k] = new Thread(() -> work(task), name + " " + k);
+         threads[k].setDaemon(true);
+         threads[k].start();
+      }
+   }
+
+   /**
+    * Method runAll runs every task once, at the same time, and returns when all of them have finished.
+    */
+   public void runAll()
+   {
+      caller = Thread.currentThread();
+      running.set(tasks.length);
+      generation++;                                // Only the caller changes the generation, so this does not race.
+      for (Thread thread : threads)
+      {
+         LockSupport.unpark(thread);
+      }
+      while (running.get() > 0)
+      {
+         LockSupport.park(this);
+         if (Thread.interrupted())
+         {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training interrupted, terminating.");
+         }
+      }
+      if (failure != null)
+      {
+         Throwable cause = failure;
+         failure = null;
+         throw new IllegalStateException("Training worker failed, terminating.", cause);
+      }
+   }
+
+   /**
+    * Method close ends the threads and waits for them to finish. The group cannot run its tasks again afterwards.
+    */
+   public void close()
+   {
+      closed = true;
+      for (Thread thread : threads)
+      {
+         LockSupport.unpark(thread);
+      }
+      for (Thread thread : threads)
+      {
+         try
+         {
+            thread.join();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            return;
+         }
+      }
+   }
+
+   /**
+    * Method work is the loop of each thread: wait for a new generation, run the task, and wake the caller after the last task
+    * of the round finishes, until the group is closed.
+    *
+    * @param task The index of the thread's task.
+    */
+   void work(int task)
+   {
+      int seen = 0;
+      while (true)
+      {
+         while (generation == seen && !closed)
+         {
+            LockSupport.park(this);
+         }
+         if (closed)
+         {
+            return;
+         }
+         seen = generation;
+         try
+         {
+            tasks[task].run();
+         }
+         catch (Throwable e)
+         {
+            failure = e;
+         }
+         if (running.decrementAndGet() == 0)
+         {
+            LockSupport.unpark(caller);
+         }
+      }  // while (true)
+   }
+}
@@ -0,0 +1,75 @@
+package src;
+
+/**
+ * The Workspace class holds everything that changes while a single case runs through a Perceptron: the activations, the back
+ * propagation variables theta, omega and psi, and a partials buffer
+ * when the workspace is used for training. The weights are not part of a workspace, so any number of
+ * threads can run cases through the same Perceptron at once as long as each thread uses its own workspace and nobody changes the
+ * weights in the meantime.
+ *
+ * The arrays are indexed exactly like the matching fields of the Perceptron, which uses a workspace of its own for runNetwork and
+ * backProp.
+ */
+public class Workspace
+{
+   double[][] activations;            // First index is the activation layer, second index is the node in that layer.
+
+   // The following variables are used in back propagation. They match the documentation exactly.
+   double[][] theta;
+   double[][] omega;
+   double[][] psi;
+
+   double[] partials;                 // Changes to the weights accumulated by this workspace, laid out like Perceptron.weights.
+
+   /**
+    * Creates a workspace sized for the given perceptron.
+    *
+    * @param perceptron The perceptron whose cases will be run in this workspace.
+    */
+   public Workspace(Perceptron perceptron)
+   {
+      this(perceptron, true);
+   }
+
+   /**
+    * Creates a workspace sized for the given perceptron, leaving out the partials buffer if the workspace is only used to run
+    * cases forward. The partials buffer is as large as the weights, so inference workspaces are far smaller without it.
+    *
+    * @param perceptron The perceptron whose cases will be run in this workspace.
+    * @param training True if the workspace will also accumulate partials.
+    */
+   public Workspace(Perceptron perceptron, boolean training)
+   {
+      int numberActivationLayers = perceptron.numberActivationLayers;
+
+      activations = new double[numberActivationLayers][];
+      theta = new double[numberActivationLayers - 1][];     // Theta, omega, and psi are not computed for the input layer,
+      omega = new double[numberActivationLayers - 1][];     // so the lengths are one less than the length of activations.
+      psi = new double[numberActivationLayers - 1][];
+
+      activations[0] = new double[perceptron.inputNodes];
+      for (int n = 1; n < numberActivationLayers; n++)
+      {
+         int nodes = (n == numberActivationLayers - 1) ? perceptron.outputNodes : perceptron.hiddenLayerNodes[n - 1];
+         activations[n] = new double[nodes];
+         theta[n - 1] = new double[nodes];
+         omega[n - 1] = new double[nodes];
+         psi[n - 1] = new double[nodes];
+      }
+
+      if (training)
+      {
+         partials = new double[perceptron.weights.length];
+      }
+   }
+
+   /**
+    * Method outputs returns the output activation layer, which holds the result of the last case run in this workspace.
+    *
+    * @return The output activations.
+    */
+   public double[] outputs()
+   {
+      return activations[activations.length - 1];
+   }
+}